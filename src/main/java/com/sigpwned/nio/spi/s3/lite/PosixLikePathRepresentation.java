@@ -25,6 +25,7 @@
 
 package com.sigpwned.nio.spi.s3.lite;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
@@ -45,21 +46,60 @@ import java.util.stream.Collectors;
  */
 class PosixLikePathRepresentation {
   private static final String PATH_SEPARATOR = S3FileSystemProvider.SEPARATOR;
+  private static final char PATH_SEPARATOR_CHAR = PATH_SEPARATOR.charAt(0);
+  private static final int[] NO_ELEMENTS = new int[0];
   static final PosixLikePathRepresentation ROOT = new PosixLikePathRepresentation(PATH_SEPARATOR);
   static final PosixLikePathRepresentation EMPTY_PATH = new PosixLikePathRepresentation("");
-  private static final char PATH_SEPARATOR_CHAR = PATH_SEPARATOR.charAt(0);
 
-  private String path;
+  private final String path;
+
+  /**
+   * The start and end of each name element in {@link #path}, in pairs. Found in one pass when the
+   * representation is created, so that elements can be read without splitting the string.
+   */
+  private final int[] elementOffsets;
 
   PosixLikePathRepresentation(String path) {
     if (path == null) {
       throw new IllegalArgumentException("path may not be null");
     }
     this.path = path;
+    this.elementOffsets = isRootString(path) ? NO_ELEMENTS : findElementOffsets(path);
   }
 
   PosixLikePathRepresentation(char[] path) {
-    new PosixLikePathRepresentation(new String(path));
+    this(new String(path));
+  }
+
+  /**
+   * Finds the elements between separators, skipping those that are empty or only whitespace
+   */
+  private static int[] findElementOffsets(String path) {
+    int[] result = new int[8];
+    int count = 0;
+    final int length = path.length();
+    int start = 0;
+    while (start < length) {
+      int end = path.indexOf(PATH_SEPARATOR_CHAR, start);
+      if (end == -1) {
+        end = length;
+      }
+
+      boolean blank = true;
+      for (int i = start; i < end && blank; i++) {
+        blank = path.charAt(i) <= ' ';
+      }
+      if (!blank) {
+        if (count == result.length) {
+          result = Arrays.copyOf(result, count * 2);
+        }
+        result[count++] = start;
+        result[count++] = end;
+      }
+
+      start = end + 1;
+    }
+    return count == 0 ? NO_ELEMENTS : Arrays.copyOf(result, count);
   }
 
   /**
@@ -214,12 +254,123 @@ class PosixLikePathRepresentation {
 
 
   List<String> elements() {
-    if (this.isRoot()) {
+    final int count = elementCount();
+    if (count == 0) {
       return Collections.emptyList();
     }
 
-    return Arrays.stream(path.split(PATH_SEPARATOR)).filter(s -> !s.trim().isEmpty())
-        .collect(Collectors.toList());
+    List<String> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(element(i));
+    }
+    return result;
+  }
+
+  /**
+   * The number of name elements, which is zero for the root and the empty path
+   */
+  int elementCount() {
+    return elementOffsets.length / 2;
+  }
+
+  String element(int index) {
+    return path.substring(elementStart(index), elementEnd(index));
+  }
+
+  /**
+   * The index in {@link #toString()} of the first character of the given element
+   */
+  int elementStart(int index) {
+    return elementOffsets[2 * index];
+  }
+
+  /**
+   * The index in {@link #toString()} just after the last character of the given element
+   */
+  int elementEnd(int index) {
+    return elementOffsets[2 * index + 1];
+  }
+
+  /**
+   * Joins the elements from {@code beginIndex}, inclusive, to {@code endIndex}, exclusive, with
+   * single separators. When the elements are already separated that way, which is the usual case,
+   * this is one substring.
+   */
+  String join(int beginIndex, int endIndex) {
+    boolean contiguous = true;
+    for (int i = beginIndex + 1; i < endIndex && contiguous; i++) {
+      contiguous = elementStart(i) == elementEnd(i - 1) + 1;
+    }
+    if (contiguous) {
+      return path.substring(elementStart(beginIndex), elementEnd(endIndex - 1));
+    }
+
+    StringBuilder result = new StringBuilder();
+    for (int i = beginIndex; i < endIndex; i++) {
+      if (i > beginIndex) {
+        result.append(PATH_SEPARATOR_CHAR);
+      }
+      result.append(path, elementStart(i), elementEnd(i));
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns {@code true} if element {@code i} of {@code a} is the same as element {@code j} of
+   * {@code b}
+   */
+  static boolean elementEquals(PosixLikePathRepresentation a, int i, PosixLikePathRepresentation b,
+      int j) {
+    int length = a.elementEnd(i) - a.elementStart(i);
+    return b.elementEnd(j) - b.elementStart(j) == length
+        && a.path.regionMatches(a.elementStart(i), b.path, b.elementStart(j), length);
+  }
+
+  /**
+   * Compares the strings formed by joining the elements of each representation with single
+   * separators, each followed by a separator if the given flag is set and it has any elements, as
+   * {@link String#compareTo(String)} would, but without forming them
+   */
+  static int compareElements(PosixLikePathRepresentation a, boolean aTrailingSeparator,
+      PosixLikePathRepresentation b, boolean bTrailingSeparator) {
+    final int aCount = a.elementCount();
+    final int bCount = b.elementCount();
+    for (int i = 0; i < aCount && i < bCount; i++) {
+      final int aStart = a.elementStart(i);
+      final int bStart = b.elementStart(i);
+      final int aLength = a.elementEnd(i) - aStart;
+      final int bLength = b.elementEnd(i) - bStart;
+      final int length = Math.min(aLength, bLength);
+      for (int k = 0; k < length; k++) {
+        char ac = a.path.charAt(aStart + k);
+        char bc = b.path.charAt(bStart + k);
+        if (ac != bc) {
+          return ac - bc;
+        }
+      }
+      if (aLength != bLength) {
+        // One element is a prefix of the other. The shorter is followed by a separator, which no
+        // element contains, or by nothing.
+        int ac = aLength < bLength ? charAfterElement(a, i, aTrailingSeparator)
+            : a.path.charAt(aStart + length);
+        int bc = bLength < aLength ? charAfterElement(b, i, bTrailingSeparator)
+            : b.path.charAt(bStart + length);
+        return ac == -1 ? -1 : bc == -1 ? 1 : ac - bc;
+      }
+    }
+
+    // One is a prefix of the other, apart from trailing separators
+    if (aCount != bCount) {
+      return aCount < bCount ? -1 : 1;
+    }
+    boolean aTrailing = aTrailingSeparator && aCount > 0;
+    boolean bTrailing = bTrailingSeparator && bCount > 0;
+    return aTrailing == bTrailing ? 0 : aTrailing ? 1 : -1;
+  }
+
+  private static int charAfterElement(PosixLikePathRepresentation x, int index,
+      boolean trailingSeparator) {
+    return index < x.elementCount() - 1 || trailingSeparator ? PATH_SEPARATOR_CHAR : -1;
   }
 
   @Override
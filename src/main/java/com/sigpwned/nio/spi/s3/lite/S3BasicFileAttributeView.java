@@ -26,7 +26,6 @@ package com.sigpwned.nio.spi.s3.lite;
 
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.FileTime;
-import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectRequest;
 import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectResponse;
 
 class S3BasicFileAttributeView implements BasicFileAttributeView {
@@ -50,14 +49,19 @@ class S3BasicFileAttributeView implements BasicFileAttributeView {
    *
    * <p>
    * It is implementation specific if all file attributes are read as an atomic operation with
-   * respect to other file system operations.
+   * respect to other file system operations. Paths produced by a directory stream already carry
+   * the attributes from the listing, so those are returned without a request until this file
+   * system next changes an object. They are a snapshot, so changes made by other clients since the
+   * listing are not seen.
    *
    * @return the file attributes
    */
   @Override
   public S3BasicFileAttributes readAttributes() {
-    HeadObjectResponse response = getPath().getFileSystem().getClient().headObject(
-        HeadObjectRequest.builder().bucket(getPath().bucketName()).key(getPath().getKey()).build());
+    S3BasicFileAttributes listed = getPath().listedAttributes();
+    if (listed != null)
+      return listed;
+    HeadObjectResponse response = getPath().getFileSystem().headObject(getPath().getKey());
     return S3BasicFileAttributes.fromHeadObjectResponse(getPath(), response);
   }
 
@@ -31,6 +31,7 @@ import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.util.Optional;
 import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectResponse;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
 
 /**
  * Representation of {@link BasicFileAttributes} for an S3 object
@@ -42,19 +43,36 @@ class S3BasicFileAttributes implements BasicFileAttributes {
       HeadObjectResponse r) {
     boolean directory = path.isDirectory();
     if (directory) {
-      return new S3BasicFileAttributes(EPOCH, EPOCH, EPOCH, false, true, 0L, null);
+      return DIRECTORY;
     } else {
-      FileTime lastModifiedTime =
-          Optional.ofNullable(r.lastModified()).map(FileTime::from).orElse(null);
-      FileTime lastAccessTime = lastModifiedTime;
-      FileTime creationTime = lastModifiedTime;
-      Long size = r.contentLength();
-      Object fileKey = r.eTag();
-      return new S3BasicFileAttributes(lastModifiedTime, lastAccessTime, creationTime, true, false,
-          size, fileKey);
+      return ofObject(r.lastModified(), r.contentLength(), r.eTag());
     }
   }
 
+  /**
+   * Attributes for an object returned by ListObjectsV2, which carries the same size, ETag, and
+   * modification time as a HEAD, so both give the same attributes for the same object.
+   */
+  /* default */ static S3BasicFileAttributes fromS3Object(S3Object o) {
+    return ofObject(o.lastModified(), o.size(), o.eTag());
+  }
+
+  /**
+   * A missing modification time is reported as the epoch, like a directory's, and a missing size
+   * as zero.
+   */
+  private static S3BasicFileAttributes ofObject(Instant lastModified, Long size, String eTag) {
+    FileTime lastModifiedTime = Optional.ofNullable(lastModified).map(FileTime::from).orElse(EPOCH);
+    return new S3BasicFileAttributes(lastModifiedTime, lastModifiedTime, lastModifiedTime, true,
+        false, Optional.ofNullable(size).orElse(0L), eTag);
+  }
+
+  /**
+   * Attributes for a "directory," i.e., a common prefix
+   */
+  /* default */ static final S3BasicFileAttributes DIRECTORY =
+      new S3BasicFileAttributes(EPOCH, EPOCH, EPOCH, false, true, 0L, null);
+
   private final FileTime lastModifiedTime;
   private final FileTime lastAccessTime;
   private final FileTime creationTime;
@@ -73,7 +91,7 @@ class S3BasicFileAttributes implements BasicFileAttributes {
     this.regularFile = regularFile;
     this.directory = directory;
     this.size = size;
-    this.fileKey = requireNonNull(fileKey);
+    this.fileKey = fileKey;
   }
 
   /**
@@ -0,0 +1,210 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.util.Collections.emptyList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import com.sigpwned.aws.sdk.lite.s3.exception.NoSuchKeyException;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Request;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Response;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+import com.sigpwned.nio.spi.s3.lite.util.BoundedExecutor;
+
+/**
+ * Reads the attributes of many paths at once. Paths are grouped by parent directory. A group with
+ * many paths is answered by listing the range of keys it spans, which covers up to 1000 keys per
+ * request, and any other path is answered with its own HEAD. Listings and HEADs run concurrently.
+ * A listing that turns out to cover too few of its group's keys per page, e.g., because the
+ * directory holds many other objects, stops early and leaves its remaining keys to HEADs.
+ */
+final class S3BulkAttributeReader {
+  private static final String PATH_SEPARATOR = S3FileSystemProvider.SEPARATOR;
+
+  /**
+   * Groups with at least this many keys are listed rather than HEADed
+   */
+  private static final int MIN_LISTED_GROUP_SIZE = 32;
+
+  /**
+   * A listing continues only while its pages answer at least this many of the group's keys on
+   * average
+   */
+  private static final int MIN_KEYS_PER_PAGE = 8;
+
+  private S3BulkAttributeReader() {}
+
+  /**
+   * @return the attributes of each distinct path, in the order given, or empty if it does not exist
+   * @throws IOException if any lookup failed, after all lookups have been attempted
+   */
+  static Map<Path, Optional<BasicFileAttributes>> readAttributes(S3FileSystem fileSystem,
+      Collection<S3Path> paths) throws IOException {
+    final S3FileSystemProvider provider = fileSystem.provider();
+    final Map<String, Optional<BasicFileAttributes>> results = new ConcurrentHashMap<>();
+    final Queue<S3Path> remaining = new ConcurrentLinkedQueue<>();
+    final AtomicReference<IOException> problem = new AtomicReference<>();
+
+    // Keys by parent directory in S3 order, for files only
+    final Map<String, TreeMap<String, S3Path>> groups = new HashMap<>();
+    for (S3Path path : paths) {
+      String key = path.getKey();
+      if (key.isEmpty()) {
+        results.put(key, Optional.of(S3BasicFileAttributes.DIRECTORY));
+      } else if (path.isDirectory()) {
+        remaining.add(path);
+      } else if (fileSystem.isKnownMissing(key)) {
+        results.put(key, Optional.empty());
+      } else {
+        String parent = key.substring(0, key.lastIndexOf(PATH_SEPARATOR) + 1);
+        groups.computeIfAbsent(parent, p -> new TreeMap<>(S3KeyListing::compareKeys))
+            .put(key, path);
+      }
+    }
+
+    BoundedExecutor workers =
+        new BoundedExecutor(provider.getExecutor(), provider.getBulkOperationParallelism());
+    for (Map.Entry<String, TreeMap<String, S3Path>> group : groups.entrySet()) {
+      if (group.getValue().size() < MIN_LISTED_GROUP_SIZE) {
+        remaining.addAll(group.getValue().values());
+        continue;
+      }
+      workers.execute(() -> {
+        try {
+          remaining.addAll(listGroup(fileSystem, group.getKey(), group.getValue(), results));
+        } catch (RuntimeException e) {
+          problem.compareAndSet(null, S3BulkOperations.toIOException(e));
+        }
+      });
+    }
+    workers.await();
+
+    // Everything else, including keys a listing gave up on, gets its own request
+    workers = new BoundedExecutor(provider.getExecutor(), provider.getBulkOperationParallelism());
+    for (S3Path path : remaining) {
+      workers.execute(() -> {
+        try {
+          results.put(path.getKey(), lookup(fileSystem, path));
+        } catch (RuntimeException e) {
+          problem.compareAndSet(null, S3BulkOperations.toIOException(e));
+        }
+      });
+    }
+    workers.await();
+
+    if (problem.get() != null)
+      throw problem.get();
+
+    Map<Path, Optional<BasicFileAttributes>> result = new LinkedHashMap<>();
+    for (S3Path path : paths)
+      result.put(path, results.get(path.getKey()));
+    return result;
+  }
+
+  /**
+   * Lists the keys of the given group in one pass over the key range they span
+   *
+   * @return the paths the listing gave up on
+   */
+  private static List<S3Path> listGroup(S3FileSystem fileSystem, String parent,
+      TreeMap<String, S3Path> group, Map<String, Optional<BasicFileAttributes>> results) {
+    final String first = group.firstKey();
+    final int maxPages = (group.size() + MIN_KEYS_PER_PAGE - 1) / MIN_KEYS_PER_PAGE;
+
+    // StartAfter is exclusive, so start just before the first key. Drop a whole code point, so a
+    // surrogate pair is never split.
+    ListObjectsV2Request request = ListObjectsV2Request.builder()
+        .bucket(fileSystem.getBucketName()).prefix(parent).delimiter(PATH_SEPARATOR)
+        .startAfter(first.substring(0, first.offsetByCodePoints(first.length(), -1))).build();
+
+    Iterator<Map.Entry<String, S3Path>> wanted = group.entrySet().iterator();
+    Map.Entry<String, S3Path> next = wanted.next();
+    int pages = 0;
+    try (Stream<ListObjectsV2Response> responses =
+        fileSystem.getClient().listObjectsV2Paginator(request).stream()) {
+      Iterator<ListObjectsV2Response> iterator = responses.iterator();
+      while (next != null && iterator.hasNext()) {
+        if (pages == maxPages) {
+          List<S3Path> result = new ArrayList<>();
+          result.add(next.getValue());
+          wanted.forEachRemaining(e -> result.add(e.getValue()));
+          return result;
+        }
+        pages = pages + 1;
+
+        ListObjectsV2Response response = iterator.next();
+        List<S3Object> objects = response.hasContents() ? response.contents() : emptyList();
+        for (S3Object object : objects) {
+          // Every wanted key before this one is missing
+          while (next != null && S3KeyListing.compareKeys(next.getKey(), object.key()) < 0) {
+            results.put(next.getKey(), Optional.empty());
+            next = wanted.hasNext() ? wanted.next() : null;
+          }
+          if (next == null)
+            break;
+          if (next.getKey().equals(object.key())) {
+            results.put(next.getKey(), Optional.of(S3BasicFileAttributes.fromS3Object(object)));
+            next = wanted.hasNext() ? wanted.next() : null;
+          }
+        }
+      }
+    }
+
+    // The listing ran out, so every wanted key left is missing
+    while (next != null) {
+      results.put(next.getKey(), Optional.empty());
+      next = wanted.hasNext() ? wanted.next() : null;
+    }
+
+    return emptyList();
+  }
+
+  private static Optional<BasicFileAttributes> lookup(S3FileSystem fileSystem, S3Path path) {
+    if (path.isDirectory()) {
+      ListObjectsV2Response response = fileSystem.getClient()
+          .listObjectsV2(ListObjectsV2Request.builder().bucket(fileSystem.getBucketName())
+              .prefix(S3BulkOperations.directoryKey(path)).maxKeys(1).build());
+      if (response.hasContents() && !response.contents().isEmpty())
+        return Optional.of(S3BasicFileAttributes.DIRECTORY);
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(S3BasicFileAttributes.fromHeadObjectResponse(path,
+          fileSystem.headObject(path.getKey())));
+    } catch (NoSuchKeyException e) {
+      return Optional.empty();
+    }
+  }
+}
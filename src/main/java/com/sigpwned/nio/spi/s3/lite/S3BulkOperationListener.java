@@ -0,0 +1,46 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import java.io.IOException;
+
+/**
+ * Receives per-object progress and failures from bulk operations like recursive copy, move, and
+ * delete. Bulk operations run objects in parallel, so implementations must be thread-safe.
+ */
+public interface S3BulkOperationListener {
+  public static final S3BulkOperationListener NOP = new S3BulkOperationListener() {};
+
+  /**
+   * Called after the object at {@code source} has been copied to {@code target}.
+   */
+  default void onObjectCopied(S3Path source, S3Path target) {}
+
+  /**
+   * Called after the object at {@code path} has been deleted.
+   */
+  default void onObjectDeleted(S3Path path) {}
+
+  /**
+   * Called when the operation on the object at {@code path} fails. The bulk operation continues
+   * with the remaining objects.
+   */
+  default void onObjectFailed(S3Path path, IOException cause) {}
+}
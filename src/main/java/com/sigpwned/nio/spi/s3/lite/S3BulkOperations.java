@@ -0,0 +1,254 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.lang.String.format;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.NoSuchFileException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Request;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Response;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+import com.sigpwned.nio.spi.s3.lite.util.BoundedExecutor;
+
+/**
+ * Recursive operations over every object under a directory prefix. The source listing is streamed
+ * and each object is handed to a bounded number of workers on the provider executor, so memory use
+ * does not grow with the size of the prefix.
+ */
+final class S3BulkOperations {
+  private static final String PATH_SEPARATOR = S3FileSystemProvider.SEPARATOR;
+
+  private S3BulkOperations() {}
+
+  /**
+   * Copies every object under the {@code source} directory to the same relative key under the
+   * {@code target} directory. If {@code deleteSource} is set, then each source object is deleted
+   * after it has been copied successfully, in batches, which makes this a move.
+   *
+   * @throws FileAlreadyExistsException if {@code replaceExisting} is not set and the target
+   *         directory already contains objects
+   * @throws NoSuchFileException if the source directory contains no objects
+   * @throws IOException if any object could not be copied or deleted, after all objects have been
+   *         attempted. Individual failures are reported to the listener.
+   */
+  static void copyDirectory(S3Path source, S3Path target, boolean replaceExisting,
+      boolean deleteSource, S3BulkOperationListener listener) throws IOException {
+    final S3FileSystem sourceFileSystem = source.getFileSystem();
+    final S3FileSystem targetFileSystem = target.getFileSystem();
+    final S3FileSystemProvider provider = sourceFileSystem.provider();
+    final String sourcePrefix = directoryKey(source);
+    final String targetPrefix = directoryKey(target);
+
+    // Buckets with the same name on different endpoints are different buckets, so only the same
+    // file system, or the same client and bucket name, means the same bucket
+    final boolean sameBucket = sourceFileSystem == targetFileSystem
+        || (sourceFileSystem.getClient() == targetFileSystem.getClient()
+            && sourceFileSystem.getBucketName().equals(targetFileSystem.getBucketName()));
+    if (sameBucket && targetPrefix.startsWith(sourcePrefix)) {
+      throw new IOException(
+          format("Cannot copy directory %s into itself at %s", source, target));
+    }
+
+    if (!replaceExisting && !isEmptyPrefix(targetFileSystem, targetPrefix)) {
+      throw new FileAlreadyExistsException(target.toString());
+    }
+
+    final BoundedExecutor executor =
+        new BoundedExecutor(provider.getExecutor(), provider.getBulkOperationParallelism());
+    final S3ObjectDeleter deleter =
+        deleteSource ? new S3ObjectDeleter(sourceFileSystem, listener) : null;
+    final AtomicLong copyFailedCount = new AtomicLong(0L);
+
+    long count = 0L;
+    try (Stream<S3Object> objects = listObjects(sourceFileSystem, sourcePrefix)) {
+      Iterator<S3Object> iterator = objects.iterator();
+      while (iterator.hasNext()) {
+        final S3Object object = iterator.next();
+        final String sourceKey = object.key();
+        final S3Path sourcePath = sourceFileSystem.getPathForKey(sourceKey);
+        final S3Path targetPath = targetFileSystem
+            .getPathForKey(targetPrefix + sourceKey.substring(sourcePrefix.length()));
+
+        executor.execute(() -> {
+          try {
+            provider.copyObject(sourcePath, targetPath, object.size(), false);
+          } catch (IOException | RuntimeException e) {
+            copyFailedCount.incrementAndGet();
+            listener.onObjectFailed(sourcePath, toIOException(e));
+            return;
+          }
+
+          listener.onObjectCopied(sourcePath, targetPath);
+
+          if (deleter != null) {
+            // Delete full batches inline. This worker already holds a permit, so taking another
+            // one here could deadlock when every worker does the same.
+            List<String> batch = deleter.add(sourceKey);
+            if (batch != null)
+              deleter.deleteBatch(batch);
+          }
+        });
+
+        count = count + 1L;
+      }
+    }
+
+    executor.await();
+
+    if (deleter != null)
+      deleter.deleteBatch(deleter.drain());
+
+    if (count == 0L)
+      throw new NoSuchFileException(source.toString());
+
+    long failedCount = copyFailedCount.get() + (deleter != null ? deleter.getFailedCount() : 0L);
+    if (failedCount != 0L) {
+      throw new IOException(format("Failed to %s %d of %d objects from %s to %s",
+          deleteSource ? "move" : "copy", failedCount, count, source, target));
+    }
+  }
+
+  /**
+   * Deletes every object under the given directory. Keys are packed into DeleteObjects batches as
+   * the listing streams in, and batches are deleted in parallel.
+   *
+   * @throws NoSuchFileException if the directory contains no objects
+   * @throws IOException if any object could not be deleted, after all objects have been attempted.
+   *         Individual failures are reported to the listener.
+   */
+  static void deleteDirectory(S3Path directory, S3BulkOperationListener listener)
+      throws IOException {
+    final S3FileSystem fileSystem = directory.getFileSystem();
+    final S3FileSystemProvider provider = fileSystem.provider();
+    final String prefix = directoryKey(directory);
+
+    final BoundedExecutor executor =
+        new BoundedExecutor(provider.getExecutor(), provider.getBulkOperationParallelism());
+    final S3ObjectDeleter deleter = new S3ObjectDeleter(fileSystem, listener);
+
+    long count = 0L;
+    try (Stream<S3Object> objects = listObjects(fileSystem, prefix)) {
+      Iterator<S3Object> iterator = objects.iterator();
+      while (iterator.hasNext()) {
+        List<String> batch = deleter.add(iterator.next().key());
+        if (batch != null)
+          executor.execute(() -> deleter.deleteBatch(batch));
+        count = count + 1L;
+      }
+    }
+
+    List<String> batch = deleter.drain();
+    if (!batch.isEmpty())
+      executor.execute(() -> deleter.deleteBatch(batch));
+
+    executor.await();
+
+    if (count == 0L)
+      throw new NoSuchFileException(directory.toString());
+
+    if (deleter.getFailedCount() != 0L) {
+      throw new IOException(format("Failed to delete %d of %d objects from %s",
+          deleter.getFailedCount(), count, directory));
+    }
+  }
+
+  /**
+   * Deletes exactly the given objects. Directory paths are not expanded; a directory path deletes
+   * only its marker object, if any. Paths are grouped by bucket and deleted in parallel batches. As
+   * with {@link S3FileSystemProvider#delete(java.nio.file.Path)}, deleting an object that does not
+   * exist is not an error.
+   *
+   * @throws IOException if any object could not be deleted, after all objects have been attempted.
+   *         Individual failures are reported to the listener.
+   */
+  static void deleteObjects(Collection<S3Path> paths, S3BulkOperationListener listener)
+      throws IOException {
+    if (paths.isEmpty())
+      return;
+
+    final S3FileSystemProvider provider = paths.iterator().next().getFileSystem().provider();
+    final BoundedExecutor executor =
+        new BoundedExecutor(provider.getExecutor(), provider.getBulkOperationParallelism());
+    final Map<S3FileSystem, S3ObjectDeleter> deleters = new LinkedHashMap<>();
+
+    for (S3Path path : paths) {
+      S3ObjectDeleter deleter = deleters.computeIfAbsent(path.getFileSystem(),
+          fs -> new S3ObjectDeleter(fs, listener));
+      List<String> batch = deleter.add(path.getKey());
+      if (batch != null)
+        executor.execute(() -> deleter.deleteBatch(batch));
+    }
+
+    for (S3ObjectDeleter deleter : deleters.values()) {
+      List<String> batch = deleter.drain();
+      if (!batch.isEmpty())
+        executor.execute(() -> deleter.deleteBatch(batch));
+    }
+
+    executor.await();
+
+    long failedCount = deleters.values().stream().mapToLong(S3ObjectDeleter::getFailedCount).sum();
+    if (failedCount != 0L) {
+      throw new IOException(
+          format("Failed to delete %d of %d objects", failedCount, paths.size()));
+    }
+  }
+
+  /**
+   * Streams every object under the given prefix, with no delimiter, in key order.
+   */
+  static Stream<S3Object> listObjects(S3FileSystem fileSystem, String prefix) {
+    return fileSystem.getClient()
+        .listObjectsV2Paginator(ListObjectsV2Request.builder()
+            .bucket(fileSystem.getBucketName()).prefix(prefix).build())
+        .stream().flatMap(r -> r.hasContents() ? r.contents().stream() : Stream.empty());
+  }
+
+  /**
+   * @return the key prefix for the given directory, which is empty for the root and ends with the
+   *         separator otherwise
+   */
+  static String directoryKey(S3Path path) {
+    String key = path.getKey();
+    if (!key.isEmpty() && !key.endsWith(PATH_SEPARATOR))
+      key = key + PATH_SEPARATOR;
+    return key;
+  }
+
+  private static boolean isEmptyPrefix(S3FileSystem fileSystem, String prefix) {
+    ListObjectsV2Response response = fileSystem.getClient().listObjectsV2(ListObjectsV2Request
+        .builder().bucket(fileSystem.getBucketName()).prefix(prefix).maxKeys(1).build());
+    return !response.hasContents() || response.contents().isEmpty();
+  }
+
+  static IOException toIOException(Exception e) {
+    if (e instanceof IOException)
+      return (IOException) e;
+    return new IOException(e.getMessage(), e);
+  }
+}
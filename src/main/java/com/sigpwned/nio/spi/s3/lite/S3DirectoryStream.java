@@ -26,36 +26,76 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import com.sigpwned.aws.sdk.lite.s3.model.CommonPrefix;
 import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Request;
-import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Response;
+import com.sigpwned.nio.spi.s3.lite.util.PrefetchingIterator;
 
 class S3DirectoryStream implements DirectoryStream<Path> {
   private static final String PATH_SEPARATOR = S3FileSystemProvider.SEPARATOR;
 
+  private final S3FileSystem fileSystem;
   private Iterator<Path> iterator;
+  private PrefetchingIterator<ListObjectsV2Response> prefetch;
   private boolean open;
 
-  S3DirectoryStream(S3Path path, Filter<? super Path> filter) {
-    final S3FileSystem fileSystem = path.getFileSystem();
+  S3DirectoryStream(S3Path path, Filter<? super Path> filter) throws IOException {
+    this(path, "", filter);
+  }
+
+  /**
+   * @param namePrefix only entries whose names start with this prefix are listed, which S3 applies
+   *        before returning results
+   */
+  S3DirectoryStream(S3Path path, String namePrefix, Filter<? super Path> filter)
+      throws IOException {
+    this.fileSystem = path.getFileSystem();
     final String bucketName = path.bucketName();
     final String key = path.getKey();
+    final S3FileSystemProvider provider = fileSystem.provider();
 
     open = true;
 
-    iterator =
-        fileSystem.getClient()
-            .listObjectsV2Paginator(ListObjectsV2Request
-                .builder().bucket(bucketName).prefix(key).delimiter(PATH_SEPARATOR).build())
-            .stream()
-            .flatMap(r -> Stream.concat(r.commonPrefixes().stream().map(CommonPrefix::prefix),
-                r.contents().stream().map(S3Object::key)))
-            .map(fileSystem::getPath)
-            // Including the parent would cause cycles
-            .filter(s3pi -> !isEqualToParent(key, s3pi)).filter(s3pi -> tryAccept(filter, s3pi))
-            .map(s3pi -> (Path) s3pi).iterator();
+    Stream<S3Path> entries;
+    final S3KeyListing listing = fileSystem.findListing(key);
+    if (listing != null) {
+      // Serve the entries from a local index instead of listing S3
+      entries = listing.children(fileSystem, key + namePrefix);
+    } else {
+      Iterator<ListObjectsV2Response> responses = fileSystem.getClient()
+          .listObjectsV2Paginator(ListObjectsV2Request.builder().bucket(bucketName)
+              .prefix(key + namePrefix).delimiter(PATH_SEPARATOR).build())
+          .stream().iterator();
+
+      // Fetch the next pages while the consumer works through the current one
+      final int prefetchPages = provider.getDirectoryStreamPrefetchPages();
+      if (prefetchPages > 0) {
+        prefetch = new PrefetchingIterator<>(responses, prefetchPages, provider.getExecutor());
+        responses = prefetch;
+
+        // Closing the file system stops the prefetch if the caller never closes this stream
+        fileSystem.registerCloseable(this);
+      }
+
+      entries = StreamSupport
+          .stream(Spliterators.spliteratorUnknownSize(responses,
+              Spliterator.ORDERED | Spliterator.NONNULL), false)
+          .flatMap(r -> Stream.concat(
+              r.commonPrefixes().stream().map(CommonPrefix::prefix)
+                  .map(p -> fileSystem.getPathForListedKey(p)
+                      .withListedAttributes(S3BasicFileAttributes.DIRECTORY)),
+              r.contents().stream().map(o -> fileSystem.getPathForListedKey(o.key())
+                  .withListedAttributes(S3BasicFileAttributes.fromS3Object(o)))));
+    }
+
+    iterator = entries
+        // Including the parent would cause cycles
+        .filter(s3pi -> !isEqualToParent(key, s3pi)).filter(s3pi -> tryAccept(filter, s3pi))
+        .map(s3pi -> (Path) s3pi).iterator();
 
     // noinspection ResultOfMethodCallIgnored
     iterator.hasNext();
@@ -89,6 +129,10 @@ class S3DirectoryStream implements DirectoryStream<Path> {
 
   @Override
   public void close() {
+    if (prefetch != null) {
+      prefetch.close();
+      fileSystem.deregisterCloseable(this);
+    }
     iterator = null;
     open = false;
   }
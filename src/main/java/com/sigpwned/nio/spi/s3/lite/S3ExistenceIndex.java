@@ -0,0 +1,121 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+import com.sigpwned.nio.spi.s3.lite.util.BloomFilter;
+
+/**
+ * A Bloom filter of every key under a prefix, built from one listing. It answers "definitely
+ * absent" for most missing keys without a request, so only possible hits need a HEAD to confirm.
+ * Keys written through the owning file system are added as they are written, including while the
+ * index is being built. Deleted keys stay in the filter, which only costs a confirming HEAD.
+ */
+final class S3ExistenceIndex {
+  private final String prefix;
+  private final double falsePositiveRate;
+
+  /**
+   * Hashes of keys written while the listing runs, or null once the filter is ready
+   */
+  private long[] pending;
+  private int pendingCount;
+  private volatile BloomFilter filter;
+
+  S3ExistenceIndex(String prefix, double falsePositiveRate) {
+    this.prefix = requireNonNull(prefix);
+    this.falsePositiveRate = falsePositiveRate;
+    this.pending = new long[16];
+    this.pendingCount = 0;
+    this.filter = null;
+  }
+
+  /**
+   * Lists the prefix and builds the filter. The index must already be registered with the file
+   * system, so that keys written during the listing are not missed.
+   */
+  void build(S3FileSystem fileSystem) throws IOException {
+    long[] hashes = new long[1024];
+    int count = 0;
+    try (Stream<S3Object> objects = S3ParallelLister.list(fileSystem, prefix, false)) {
+      Iterator<S3Object> iterator = objects.iterator();
+      while (iterator.hasNext()) {
+        if (count == hashes.length)
+          hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        hashes[count++] = BloomFilter.hash(iterator.next().key());
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    synchronized (this) {
+      BloomFilter result = new BloomFilter((long) count + pendingCount, falsePositiveRate);
+      for (int i = 0; i < count; i++)
+        result.add(hashes[i]);
+      for (int i = 0; i < pendingCount; i++)
+        result.add(pending[i]);
+      pending = null;
+      filter = result;
+    }
+  }
+
+  String getPrefix() {
+    return prefix;
+  }
+
+  boolean covers(String key) {
+    return key.startsWith(prefix);
+  }
+
+  /**
+   * Returns {@code true} if the index is built and the given key is definitely not in the bucket
+   */
+  boolean isDefinitelyAbsent(String key) {
+    BloomFilter f = filter;
+    return f != null && !f.mightContain(BloomFilter.hash(key));
+  }
+
+  /**
+   * Records that the given key may now exist
+   */
+  void add(String key) {
+    long hash = BloomFilter.hash(key);
+    BloomFilter f = filter;
+    if (f != null) {
+      f.add(hash);
+      return;
+    }
+    synchronized (this) {
+      if (filter != null) {
+        filter.add(hash);
+      } else {
+        if (pendingCount == pending.length)
+          pending = Arrays.copyOf(pending, pending.length * 2);
+        pending[pendingCount++] = hash;
+      }
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import com.sigpwned.nio.spi.s3.lite.util.StorageUsage;
+
+/**
+ * The file store of one bucket. S3 has no capacity limit, so the total, usable, and unallocated
+ * space are all reported as {@link Long#MAX_VALUE}. The space used and the object count come from
+ * a parallel listing of the whole bucket, which is cached for a configurable time.
+ *
+ * <p>
+ * Besides the standard attributes, {@link #getAttribute(String)} supports {@code s3:usedSpace} and
+ * {@code s3:objectCount}.
+ */
+public final class S3FileStore extends FileStore {
+  public static final String TYPE = "s3";
+
+  public static final Duration DEFAULT_USAGE_CACHE_TTL = Duration.ofMinutes(5L);
+
+  private static final String S3_VIEW_PREFIX = TYPE + ":";
+
+  private final S3FileSystem fileSystem;
+  private volatile long usageCacheTtlMillis;
+
+  /**
+   * Guarded by this. The listing itself runs without holding the monitor.
+   */
+  private StorageUsage usage;
+  private long usageExpiresAt;
+  private CompletableFuture<StorageUsage> pendingUsage;
+
+  /* default */ S3FileStore(S3FileSystem fileSystem) {
+    this.fileSystem = requireNonNull(fileSystem);
+    this.usageCacheTtlMillis = DEFAULT_USAGE_CACHE_TTL.toMillis();
+  }
+
+  /**
+   * Sets how long the bucket's usage is reused before the bucket is listed again.
+   * {@link Duration#ZERO} lists the bucket on every request.
+   */
+  public void setUsageCacheTtl(Duration ttl) {
+    if (ttl.isNegative())
+      throw new IllegalArgumentException("ttl must not be negative");
+    usageCacheTtlMillis = ttl.toMillis();
+    synchronized (this) {
+      // A listing in progress still answers its callers, but is not cached
+      usage = null;
+      pendingUsage = null;
+    }
+  }
+
+  /**
+   * Returns the number of objects in the bucket and their total size. Concurrent callers share
+   * one listing.
+   */
+  public StorageUsage getUsage() throws IOException {
+    final long now = System.currentTimeMillis();
+    final CompletableFuture<StorageUsage> listing;
+    final boolean owner;
+    synchronized (this) {
+      if (usage != null && now < usageExpiresAt)
+        return usage;
+      owner = pendingUsage == null;
+      if (owner)
+        pendingUsage = new CompletableFuture<>();
+      listing = pendingUsage;
+    }
+
+    if (!owner) {
+      try {
+        return listing.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof IOException)
+          throw new IOException(e.getCause().getMessage(), e.getCause());
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw e;
+      }
+    }
+
+    try {
+      StorageUsage result =
+          fileSystem.getStorageUsage(fileSystem.getPath(S3FileSystemProvider.SEPARATOR));
+      synchronized (this) {
+        if (pendingUsage == listing) {
+          usage = result;
+          usageExpiresAt = now + usageCacheTtlMillis;
+        }
+      }
+      listing.complete(result);
+      return result;
+    } catch (IOException | RuntimeException | Error e) {
+      listing.completeExceptionally(e);
+      throw e;
+    } finally {
+      synchronized (this) {
+        if (pendingUsage == listing)
+          pendingUsage = null;
+      }
+    }
+  }
+
+  public long getUsedSpace() throws IOException {
+    return getUsage().getTotalSize();
+  }
+
+  public long getObjectCount() throws IOException {
+    return getUsage().getObjectCount();
+  }
+
+  /**
+   * Returns the bucket name
+   */
+  @Override
+  public String name() {
+    return fileSystem.getBucketName();
+  }
+
+  @Override
+  public String type() {
+    return TYPE;
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return false;
+  }
+
+  @Override
+  public long getTotalSpace() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public long getUsableSpace() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public long getUnallocatedSpace() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public boolean supportsFileAttributeView(Class<? extends FileAttributeView> type) {
+    return type == BasicFileAttributeView.class;
+  }
+
+  @Override
+  public boolean supportsFileAttributeView(String name) {
+    return S3FileSystem.BASIC_FILE_ATTRIBUTE_VIEW.equals(name);
+  }
+
+  @Override
+  public <V extends FileStoreAttributeView> V getFileStoreAttributeView(Class<V> type) {
+    return null;
+  }
+
+  @Override
+  public Object getAttribute(String attribute) throws IOException {
+    switch (attribute) {
+      case "totalSpace":
+        return getTotalSpace();
+      case "usableSpace":
+        return getUsableSpace();
+      case "unallocatedSpace":
+        return getUnallocatedSpace();
+      case S3_VIEW_PREFIX + "usedSpace":
+        return getUsedSpace();
+      case S3_VIEW_PREFIX + "objectCount":
+        return getObjectCount();
+      default:
+        throw new UnsupportedOperationException("Unsupported attribute " + attribute);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name() + " (" + TYPE + ")";
+  }
+}
@@ -19,30 +19,54 @@
  */
 package com.sigpwned.nio.spi.s3.lite;
 
-import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.ClosedFileSystemException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.UserPrincipalLookupService;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 import com.sigpwned.aws.sdk.lite.s3.S3Client;
+import com.sigpwned.aws.sdk.lite.s3.exception.NoSuchKeyException;
+import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectResponse;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+import com.sigpwned.nio.spi.s3.lite.util.CacheStatistics;
+import com.sigpwned.nio.spi.s3.lite.util.ExpiringCache;
+import com.sigpwned.nio.spi.s3.lite.util.MorePaths;
+import com.sigpwned.nio.spi.s3.lite.util.StorageUsage;
 
 public class S3FileSystem extends FileSystem {
   private final S3FileSystemProvider provider;
   private final S3Client client;
   private final String bucketName;
   private final Set<Closeable> closeables;
+  private volatile ExpiringCache<String, Boolean> negativeLookupCache;
+  private volatile ExpiringCache<String, HeadObjectResponse> metadataCache;
+  private final AtomicLong writeGeneration;
+  private final List<S3ExistenceIndex> existenceIndexes;
+  private final List<S3ListingIndex> listingIndexes;
+  private final S3FileStore fileStore;
   private boolean open;
 
   public S3FileSystem(S3FileSystemProvider provider, S3Client client, String bucketName) {
@@ -50,6 +74,10 @@ public class S3FileSystem extends FileSystem {
     this.client = requireNonNull(client);
     this.bucketName = requireNonNull(bucketName);
     this.closeables = Collections.newSetFromMap(new IdentityHashMap<Closeable, Boolean>());
+    this.writeGeneration = new AtomicLong(0L);
+    this.existenceIndexes = new CopyOnWriteArrayList<>();
+    this.listingIndexes = new CopyOnWriteArrayList<>();
+    this.fileStore = new S3FileStore(this);
     this.open = true;
   }
 
@@ -82,11 +110,18 @@ public class S3FileSystem extends FileSystem {
     }
   }
 
+  /**
+   * Returns the file store of this file system's bucket, which is the only one
+   */
   @Override
   public Iterable<FileStore> getFileStores() {
     if (!isOpen())
       throw new ClosedFileSystemException();
-    return emptyList();
+    return Collections.singletonList(fileStore);
+  }
+
+  /* default */ S3FileStore getFileStore() {
+    return fileStore;
   }
 
   @Override
@@ -100,8 +135,7 @@ public class S3FileSystem extends FileSystem {
   public PathMatcher getPathMatcher(String syntaxAndPattern) {
     if (!isOpen())
       throw new ClosedFileSystemException();
-    // TODO this assumes the underlying platform's filesystem is POSIX-like
-    return FileSystems.getDefault().getPathMatcher(syntaxAndPattern);
+    return S3PathMatcher.compile(syntaxAndPattern);
   }
 
   @Override
@@ -159,11 +193,24 @@ public class S3FileSystem extends FileSystem {
     throw new UnsupportedOperationException();
   }
 
+  /**
+   * Returns a watch service that polls registered directories on the interval set by
+   * {@link S3FileSystemProvider#setWatchServicePollInterval(Duration)}. Directories may be
+   * registered with {@link com.sigpwned.nio.spi.s3.lite.options.S3WatchEventModifier}.
+   */
   @Override
   public WatchService newWatchService() throws IOException {
+    return newWatchService(provider().getWatchServicePollInterval());
+  }
+
+  /**
+   * Returns a watch service that lists each registered directory on the given interval and
+   * reports the differences from the previous listing
+   */
+  public WatchService newWatchService(Duration pollInterval) throws IOException {
     if (!isOpen())
       throw new ClosedFileSystemException();
-    throw new UnsupportedOperationException();
+    return new S3WatchService(this, pollInterval);
   }
 
   /* default */ void registerCloseable(Closeable closeable) {
@@ -182,6 +229,430 @@ public class S3FileSystem extends FileSystem {
     return bucketName;
   }
 
+  /**
+   * Lists every object under the given directory, recursively, by splitting the keyspace into
+   * shards and listing them concurrently. This is much faster than a sequential listing for very
+   * large prefixes. The returned paths carry the attributes from the listing. The stream must be
+   * closed to stop any listing still in progress.
+   *
+   * @param directory the directory to list
+   * @param ordered if {@code true}, paths are returned in key order; otherwise they are returned as
+   *        shards produce them, which keeps every shard busy
+   * @return the objects under the directory, which throws {@link java.io.UncheckedIOException} if
+   *         listing fails
+   * @throws NotDirectoryException if the path is not a directory
+   */
+  public Stream<Path> listObjects(Path directory, boolean ordered) throws IOException {
+    if (!isOpen())
+      throw new ClosedFileSystemException();
+    S3Path s3Directory = requireNonNull(MorePaths.toS3Path(directory));
+    if (s3Directory.getFileSystem() != this)
+      throw new IllegalArgumentException("directory must belong to this file system");
+    if (!s3Directory.isDirectory())
+      throw new NotDirectoryException(s3Directory.toString());
+    return S3ParallelLister.list(this, S3BulkOperations.directoryKey(s3Directory), ordered)
+        .map(o -> getPathForKey(o.key())
+            .withListedAttributes(S3BasicFileAttributes.fromS3Object(o)));
+  }
+
+  /**
+   * Counts the objects under the given directory, recursively, and sums their sizes, like
+   * {@code du}. The directory is listed with the same sharded parallel listing as
+   * {@link #listObjects(Path, boolean)}, and each object is counted as it arrives, so no paths are
+   * created and memory use does not grow with the number of objects. If a fresh listing index
+   * covers the directory, it is used instead and no requests are sent.
+   *
+   * @param directory the directory to measure
+   * @return the usage, which is empty if the directory does not exist
+   * @throws NotDirectoryException if the path is not a directory
+   */
+  public StorageUsage getStorageUsage(Path directory) throws IOException {
+    if (!isOpen())
+      throw new ClosedFileSystemException();
+    final String prefix = directoryKeyOf(directory);
+    final S3KeyListing listing = findListing(prefix);
+    if (listing != null)
+      return listing.usage(prefix);
+
+    long objectCount = 0L;
+    long totalSize = 0L;
+    try (Stream<S3Object> objects = S3ParallelLister.list(this, prefix, false)) {
+      Iterator<S3Object> iterator = objects.iterator();
+      while (iterator.hasNext()) {
+        S3Object object = iterator.next();
+        objectCount = objectCount + 1;
+        if (object.size() != null)
+          totalSize = totalSize + object.size().longValue();
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return new StorageUsage(objectCount, totalSize);
+  }
+
+  /**
+   * Reads the basic attributes of many paths at once. This is much faster than calling
+   * {@link java.nio.file.Files#readAttributes(Path, Class, java.nio.file.LinkOption...)} for each
+   * path. Paths are grouped by parent directory. A group with many paths is answered by listing
+   * the range of keys it spans, and the remaining paths get one HEAD each. Listings and HEADs run
+   * concurrently, up to the provider's bulk operation parallelism.
+   *
+   * @param paths the paths to read
+   * @return the attributes of each distinct path, in the order given, or empty if the path does
+   *         not exist
+   * @throws IOException if any lookup failed, after all lookups have been attempted
+   */
+  public Map<Path, Optional<BasicFileAttributes>> readAttributes(Collection<? extends Path> paths)
+      throws IOException {
+    if (!isOpen())
+      throw new ClosedFileSystemException();
+    List<S3Path> s3Paths = new ArrayList<>(paths.size());
+    for (Path path : paths) {
+      S3Path s3Path = requireNonNull(MorePaths.toS3Path(path));
+      if (s3Path.getFileSystem() != this)
+        throw new IllegalArgumentException("paths must belong to this file system");
+      s3Paths.add(s3Path);
+    }
+    return S3BulkAttributeReader.readAttributes(this, s3Paths);
+  }
+
+  /**
+   * Returns the absolute path of the object with the given key in this bucket.
+   */
+  /* default */ S3Path getPathForKey(String key) {
+    if (!isOpen())
+      throw new ClosedFileSystemException();
+    return S3Path.getCanonicalPath(this, S3FileSystemProvider.SEPARATOR + key);
+  }
+
+  /**
+   * Returns the relative path that a listing reports for the object or common prefix with the given
+   * key, which is the same as {@code getPath(key)}, but skips parsing keys that need none.
+   */
+  /* default */ S3Path getPathForListedKey(String key) {
+    if (!isOpen())
+      throw new ClosedFileSystemException();
+    return S3Path.getCanonicalPath(this, key);
+  }
+
+  /**
+   * The default maximum number of missing keys to remember
+   */
+  public static final int DEFAULT_NEGATIVE_LOOKUP_CACHE_SIZE = 10000;
+
+  /**
+   * The default maximum number of objects whose metadata is cached
+   */
+  public static final int DEFAULT_METADATA_CACHE_SIZE = 10000;
+
+  /**
+   * Remembers keys found to be missing, so repeated existence checks for the same missing key, e.g.
+   * by {@link java.nio.file.Files#exists}, do not send a request each time. Writes, copies, and
+   * deletes through this file system forget the keys they touch. Changes made by other clients or
+   * other file systems are not seen until the entry expires. Disabled by default.
+   *
+   * @param ttl how long to remember each missing key, or {@link Duration#ZERO} to disable the cache
+   * @param maxSize the maximum number of missing keys to remember
+   */
+  public void setNegativeLookupCache(Duration ttl, int maxSize) {
+    negativeLookupCache = ttl.isZero() ? null : new ExpiringCache<>(ttl, maxSize);
+  }
+
+  /**
+   * Remembers the result of each HEAD request, so reading an object's attributes, checking its
+   * existence, and copying it do not each send their own request. Writes, copies, and deletes
+   * through this file system forget the keys they touch. Changes made by other clients or other
+   * file systems are not seen until the entry expires. Disabled by default.
+   *
+   * @param ttl how long to remember each object's metadata, or {@link Duration#ZERO} to disable
+   *        the cache
+   * @param maxSize the maximum number of objects whose metadata is remembered
+   */
+  public void setMetadataCache(Duration ttl, int maxSize) {
+    metadataCache = ttl.isZero() ? null : new ExpiringCache<>(ttl, maxSize);
+  }
+
+  /**
+   * Returns the hit and miss counts of the metadata cache, which are zero if it is disabled
+   */
+  public CacheStatistics getMetadataCacheStatistics() {
+    ExpiringCache<String, HeadObjectResponse> cache = metadataCache;
+    return cache != null ? cache.statistics() : CacheStatistics.EMPTY;
+  }
+
+  /**
+   * Returns the metadata of the object with the given key, from the metadata cache if possible.
+   * Throws the same exceptions as {@link S3Client#headObject}, and remembers a missing key in the
+   * negative lookup cache.
+   */
+  /* default */ HeadObjectResponse headObject(String key) {
+    ExpiringCache<String, HeadObjectResponse> cache = metadataCache;
+    HeadObjectResponse result = cache != null ? cache.get(key) : null;
+    if (result != null)
+      return result;
+
+    // Don't cache a response that raced with a change made through this file system
+    final long generation = writeGeneration.get();
+    try {
+      result = client
+          .headObject(HeadObjectRequest.builder().bucket(bucketName).key(key).build());
+    } catch (NoSuchKeyException e) {
+      ExpiringCache<String, Boolean> missing = negativeLookupCache;
+      if (missing != null && writeGeneration.get() == generation)
+        missing.put(key, Boolean.TRUE);
+      throw e;
+    }
+    if (cache != null && writeGeneration.get() == generation)
+      cache.put(key, result);
+
+    return result;
+  }
+
+  /**
+   * The default false positive rate of existence indexes
+   */
+  public static final double DEFAULT_EXISTENCE_INDEX_FALSE_POSITIVE_RATE = 0.01;
+
+  /**
+   * Builds an existence index of the given directory with the default false positive rate.
+   *
+   * @see #createExistenceIndex(Path, double)
+   */
+  public void createExistenceIndex(Path directory) throws IOException {
+    createExistenceIndex(directory, DEFAULT_EXISTENCE_INDEX_FALSE_POSITIVE_RATE);
+  }
+
+  /**
+   * Lists every object under the given directory once and remembers the keys in a Bloom filter.
+   * Existence checks under that directory, e.g. by {@link java.nio.file.Files#exists}, then answer
+   * most missing keys without a request, and only send a HEAD for keys that might exist. This
+   * suits workloads that check many candidate keys under a known prefix. The filter takes roughly
+   * ten bits per key at the default false positive rate. Keys written through this file system are
+   * added to the index, but objects created by other clients are not seen until the index is
+   * rebuilt. Building an index for a directory that already has one replaces it.
+   *
+   * @param directory the directory to index
+   * @param falsePositiveRate the fraction of missing keys that still need a HEAD
+   * @throws NotDirectoryException if the path is not a directory
+   */
+  public void createExistenceIndex(Path directory, double falsePositiveRate) throws IOException {
+    if (!isOpen())
+      throw new ClosedFileSystemException();
+    if (!(falsePositiveRate > 0.0 && falsePositiveRate < 1.0))
+      throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+    S3Path s3Directory = requireNonNull(MorePaths.toS3Path(directory));
+    if (s3Directory.getFileSystem() != this)
+      throw new IllegalArgumentException("directory must belong to this file system");
+    if (!s3Directory.isDirectory())
+      throw new NotDirectoryException(s3Directory.toString());
+
+    final String prefix = S3BulkOperations.directoryKey(s3Directory);
+    final S3ExistenceIndex index = new S3ExistenceIndex(prefix, falsePositiveRate);
+
+    // Register before listing, so keys written during the listing are added
+    existenceIndexes.add(index);
+    boolean built = false;
+    try {
+      index.build(this);
+      built = true;
+    } finally {
+      if (!built)
+        existenceIndexes.remove(index);
+    }
+    existenceIndexes.removeIf(i -> i != index && i.getPrefix().equals(prefix));
+  }
+
+  /**
+   * Discards the existence index of the given directory, if any
+   *
+   * @return {@code true} if an index was discarded
+   */
+  public boolean dropExistenceIndex(Path directory) {
+    S3Path s3Directory = requireNonNull(MorePaths.toS3Path(directory));
+    final String prefix = S3BulkOperations.directoryKey(s3Directory);
+    return existenceIndexes.removeIf(i -> i.getPrefix().equals(prefix));
+  }
+
+  /**
+   * Attaches a listing index of the given directory, persisted in the given local file. If the
+   * file holds an index of the same directory, it is loaded; otherwise the directory is listed and
+   * the file is written. While the index is attached and fresh, directory streams and
+   * {@link S3FileSystemProvider#walkFileTree(Path, java.nio.file.FileVisitor) walks} inside the
+   * directory read from it instead of listing S3. A write through this file system inside the
+   * directory makes the index stale until it is refreshed. Objects written by other clients are
+   * not seen until the index is refreshed.
+   *
+   * @param directory the directory to index
+   * @param indexFile the local file that holds the index
+   * @throws NotDirectoryException if the path is not a directory
+   */
+  public void attachListingIndex(Path directory, Path indexFile) throws IOException {
+    if (!isOpen())
+      throw new ClosedFileSystemException();
+    addListingIndex(directoryKeyOf(directory), requireNonNull(indexFile));
+  }
+
+  /**
+   * Lists every object under the given directory once and keeps the listing in memory as a
+   * listing index without a file. This works like {@link #attachListingIndex(Path, Path)}, and is
+   * refreshed and detached the same way. Keys are stored front-coded and attributes in primitive
+   * arrays, which takes tens of bytes per object, so even whole-bucket snapshots can stay
+   * resident. Paths are only created as directory streams and walks reach them.
+   *
+   * @param directory the directory to cache
+   * @throws NotDirectoryException if the path is not a directory
+   */
+  public void cacheDirectoryTree(Path directory) throws IOException {
+    if (!isOpen())
+      throw new ClosedFileSystemException();
+    addListingIndex(directoryKeyOf(directory), null);
+  }
+
+  /**
+   * Builds an in-memory listing index of the given directory from an S3 Inventory report instead
+   * of listing S3. The report's data files are downloaded and parsed in parallel, which is much
+   * cheaper than listing for very large buckets. Only CSV reports are supported. The index works
+   * like one from {@link #cacheDirectoryTree(Path)}, and is refreshed and detached the same way.
+   * Inventory reports are at most a day old, so objects written since the report was produced are
+   * missing unless overlaid with a live listing.
+   *
+   * @param directory the directory to index
+   * @param manifest the report's manifest.json, which may be on another file system
+   * @param overlayAppended if {@code true}, S3 is listed from the last key in the report, which
+   *        catches new objects in prefixes where keys only grow, like timestamped logs
+   * @throws NotDirectoryException if the path is not a directory
+   * @throws NoSuchFileException if the manifest or one of its data files does not exist
+   * @throws IOException if the report is not a CSV inventory of this file system's bucket
+   */
+  public void attachInventoryListing(Path directory, Path manifest, boolean overlayAppended)
+      throws IOException {
+    if (!isOpen())
+      throw new ClosedFileSystemException();
+    S3Path s3Manifest = requireNonNull(MorePaths.toS3Path(manifest));
+    String prefix = directoryKeyOf(directory);
+    S3ListingIndex index = S3ListingIndex.of(this,
+        S3InventoryReader.read(s3Manifest.toAbsolutePath(), this, prefix));
+    if (overlayAppended)
+      index.refreshAppended();
+    putListingIndex(index);
+  }
+
+  private void addListingIndex(String prefix, Path indexFile) throws IOException {
+    putListingIndex(S3ListingIndex.open(this, prefix, indexFile));
+  }
+
+  private void putListingIndex(S3ListingIndex index) {
+    String prefix = index.getPrefix();
+    listingIndexes.removeIf(i -> i.getPrefix().equals(prefix));
+    listingIndexes.add(index);
+  }
+
+  /**
+   * Refreshes the listing index of the given directory by listing only the keys after the last
+   * key it knows. This is enough when objects are only ever added in increasing key order, e.g.,
+   * under date-stamped keys.
+   *
+   * @throws IllegalArgumentException if the directory has no listing index
+   */
+  public void refreshListingIndex(Path directory) throws IOException {
+    listingIndexOf(directory).refreshAppended();
+  }
+
+  /**
+   * Refreshes the listing index of the given directory by listing only the given subdirectories,
+   * which must contain every change since the index was last refreshed.
+   *
+   * @throws IllegalArgumentException if the directory has no listing index, or a changed
+   *         directory is not inside it
+   */
+  public void refreshListingIndex(Path directory, Collection<? extends Path> changedDirectories)
+      throws IOException {
+    S3ListingIndex index = listingIndexOf(directory);
+    List<String> changedPrefixes = new ArrayList<>(changedDirectories.size());
+    for (Path changedDirectory : changedDirectories)
+      changedPrefixes.add(directoryKeyOf(changedDirectory));
+    index.refresh(changedPrefixes);
+  }
+
+  /**
+   * Detaches the listing index of the given directory, if any. The index file is left in place.
+   *
+   * @return {@code true} if an index was detached
+   */
+  public boolean detachListingIndex(Path directory) throws IOException {
+    final String prefix = directoryKeyOf(directory);
+    return listingIndexes.removeIf(i -> i.getPrefix().equals(prefix));
+  }
+
+  private S3ListingIndex listingIndexOf(Path directory) throws IOException {
+    final String prefix = directoryKeyOf(directory);
+    for (S3ListingIndex index : listingIndexes)
+      if (index.getPrefix().equals(prefix))
+        return index;
+    throw new IllegalArgumentException("no listing index for " + directory);
+  }
+
+  private String directoryKeyOf(Path directory) throws NotDirectoryException {
+    S3Path s3Directory = requireNonNull(MorePaths.toS3Path(directory));
+    if (s3Directory.getFileSystem() != this)
+      throw new IllegalArgumentException("directory must belong to this file system");
+    if (!s3Directory.isDirectory())
+      throw new NotDirectoryException(s3Directory.toString());
+    return S3BulkOperations.directoryKey(s3Directory);
+  }
+
+  /**
+   * Returns a fresh listing that contains every key with the given prefix, or null if there is none
+   */
+  /* default */ S3KeyListing findListing(String keyPrefix) {
+    S3KeyListing result = null;
+    for (S3ListingIndex index : listingIndexes) {
+      S3KeyListing listing = index.current();
+      if (listing != null && listing.covers(keyPrefix)
+          && (result == null || listing.getPrefix().length() > result.getPrefix().length()))
+        result = listing;
+    }
+    return result;
+  }
+
+  /**
+   * Returns {@code true} if the given key was recently found to be missing, or an existence index
+   * shows that it is missing
+   */
+  /* default */ boolean isKnownMissing(String key) {
+    for (S3ExistenceIndex index : existenceIndexes)
+      if (index.covers(key) && index.isDefinitelyAbsent(key))
+        return true;
+    ExpiringCache<String, Boolean> cache = negativeLookupCache;
+    return cache != null && cache.get(key) != null;
+  }
+
+  /**
+   * Returns a counter that increases with every change this file system makes to an object
+   */
+  /* default */ long getWriteGeneration() {
+    return writeGeneration.get();
+  }
+
+  /**
+   * Forgets anything cached about the given key. Must be called after every change to an object.
+   */
+  /* default */ void invalidateKey(String key) {
+    writeGeneration.incrementAndGet();
+    for (S3ExistenceIndex index : existenceIndexes)
+      if (index.covers(key))
+        index.add(key);
+    for (S3ListingIndex index : listingIndexes)
+      if (key.startsWith(index.getPrefix()))
+        index.markStale();
+    ExpiringCache<String, Boolean> missing = negativeLookupCache;
+    if (missing != null)
+      missing.invalidate(key);
+    ExpiringCache<String, HeadObjectResponse> cache = metadataCache;
+    if (cache != null)
+      cache.invalidate(key);
+  }
+
   /* default */ S3Client getClient() {
     return client;
   }
@@ -50,12 +50,14 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.NotDirectoryException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributeView;
@@ -63,6 +65,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.spi.FileSystemProvider;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -71,6 +74,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
@@ -90,20 +97,23 @@ import com.sigpwned.aws.sdk.lite.s3.S3ClientBuilder;
 import com.sigpwned.aws.sdk.lite.s3.exception.AccessDeniedException;
 import com.sigpwned.aws.sdk.lite.s3.exception.NoSuchBucketException;
 import com.sigpwned.aws.sdk.lite.s3.exception.NoSuchKeyException;
+import com.sigpwned.aws.sdk.lite.s3.model.CopyObjectRequest;
 import com.sigpwned.aws.sdk.lite.s3.model.DeleteObjectRequest;
 import com.sigpwned.aws.sdk.lite.s3.model.GetObjectRequest;
 import com.sigpwned.aws.sdk.lite.s3.model.HeadBucketRequest;
-import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectRequest;
 import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Request;
 import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Response;
 import com.sigpwned.aws.sdk.lite.s3.model.PutObjectRequest;
 import com.sigpwned.aws.sdk.lite.s3.model.PutObjectResponse;
-import com.sigpwned.httpmodel.core.util.MoreByteStreams;
 import com.sigpwned.nio.spi.s3.lite.options.ContentTypeOpenOption;
 import com.sigpwned.nio.spi.s3.lite.options.FileLengthOpenOption;
+import com.sigpwned.nio.spi.s3.lite.util.BucketRegionCache;
 import com.sigpwned.nio.spi.s3.lite.util.Buckets;
+import com.sigpwned.nio.spi.s3.lite.util.BufferPool;
+import com.sigpwned.nio.spi.s3.lite.util.DirectMappedCache;
 import com.sigpwned.nio.spi.s3.lite.util.MorePaths;
 import com.sigpwned.nio.spi.s3.lite.util.S3Uri;
+import com.sigpwned.nio.spi.s3.lite.util.UrlEncoding;
 
 public class S3FileSystemProvider extends FileSystemProvider {
   private static final AtomicReference<Supplier<S3ClientBuilder>> defaultClientBuilderSupplierReference =
@@ -133,7 +143,121 @@ public class S3FileSystemProvider extends FileSystemProvider {
     return executorReference.get();
   }
 
-  private static final Map<String, S3FileSystem> FS_CACHE = new HashMap<>();
+  private static final AtomicInteger bulkOperationParallelismReference = new AtomicInteger(16);
+
+  /**
+   * Sets the maximum number of objects that recursive copy, move, and delete operations work on at
+   * once.
+   */
+  public static void setBulkOperationParallelism(int newBulkOperationParallelism) {
+    if (newBulkOperationParallelism < 1)
+      throw new IllegalArgumentException("parallelism must be positive");
+    bulkOperationParallelismReference.set(newBulkOperationParallelism);
+  }
+
+  /* default */ int getBulkOperationParallelism() {
+    return bulkOperationParallelismReference.get();
+  }
+
+  private static final AtomicInteger directoryStreamPrefetchPagesReference = new AtomicInteger(1);
+
+  /**
+   * Sets the number of listing pages a directory stream fetches in the background ahead of its
+   * consumer. Zero disables prefetch, so each page is fetched when the consumer reaches it.
+   */
+  public static void setDirectoryStreamPrefetchPages(int newDirectoryStreamPrefetchPages) {
+    if (newDirectoryStreamPrefetchPages < 0)
+      throw new IllegalArgumentException("pages must not be negative");
+    directoryStreamPrefetchPagesReference.set(newDirectoryStreamPrefetchPages);
+  }
+
+  /* default */ int getDirectoryStreamPrefetchPages() {
+    return directoryStreamPrefetchPagesReference.get();
+  }
+
+  private static final AtomicReference<Duration> watchServicePollIntervalReference =
+      new AtomicReference<>(Duration.ofSeconds(10L));
+
+  /**
+   * Sets how often watch services from {@link S3FileSystem#newWatchService()} list each registered
+   * directory. Each poll costs at least one request per directory.
+   */
+  public static void setWatchServicePollInterval(Duration newWatchServicePollInterval) {
+    if (newWatchServicePollInterval.isNegative() || newWatchServicePollInterval.isZero())
+      throw new IllegalArgumentException("interval must be positive");
+    watchServicePollIntervalReference.set(newWatchServicePollInterval);
+  }
+
+  /* default */ Duration getWatchServicePollInterval() {
+    return watchServicePollIntervalReference.get();
+  }
+
+  private static final AtomicReference<BufferPool> copyBufferPoolReference =
+      new AtomicReference<>(new BufferPool(16, S3PipelinedCopy.PART_SIZE));
+
+  /**
+   * Sets the number of part buffers shared by all copies that cannot be done server-side. This
+   * caps the memory those copies use together at roughly this many times the part size. Objects
+   * too large for the default part size use larger parts, whose buffers are freed after each part.
+   */
+  public static void setCopyBufferCount(int newCopyBufferCount) {
+    copyBufferPoolReference.set(new BufferPool(newCopyBufferCount, S3PipelinedCopy.PART_SIZE));
+  }
+
+  /* default */ BufferPool getCopyBufferPool() {
+    return copyBufferPoolReference.get();
+  }
+
+  private static final AtomicReference<BucketRegionCache> bucketRegionCacheReference =
+      new AtomicReference<>(new BucketRegionCache());
+
+  /**
+   * Sets a file in which to remember the region of each bucket across restarts, or {@code null} to
+   * remember regions in memory only, which is the default. Regions are loaded from the file now, if
+   * it exists, and saved to it as new buckets are used. Since a bucket may have moved since the
+   * file was saved, the first use of each bucket checks its saved region with one HeadBucket
+   * request in that region, and looks the region up again if the check fails.
+   *
+   * @throws IOException if the file exists but cannot be read
+   */
+  public static void setBucketRegionCacheFile(Path newBucketRegionCacheFile) throws IOException {
+    bucketRegionCacheReference.set(newBucketRegionCacheFile != null
+        ? new BucketRegionCache(newBucketRegionCacheFile)
+        : new BucketRegionCache());
+  }
+
+  /**
+   * Test hook
+   */
+  /* default */ static void setBucketRegionCache(BucketRegionCache newBucketRegionCache) {
+    bucketRegionCacheReference.set(requireNonNull(newBucketRegionCache));
+  }
+
+  /* default */ BucketRegionCache getBucketRegionCache() {
+    return bucketRegionCacheReference.get();
+  }
+
+  /**
+   * File systems by {@link S3Uri#getId() id}. Reads take no locks.
+   */
+  private static final ConcurrentMap<String, S3FileSystem> FS_CACHE = new ConcurrentHashMap<>();
+
+  /**
+   * File systems being created, by id, so that concurrent callers wait for one creation
+   */
+  private static final ConcurrentMap<String, CompletableFuture<S3FileSystem>> FS_CREATIONS =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Clients by region, shared by every file system whose bucket is in that region
+   */
+  private static final ConcurrentMap<String, S3Client> REGION_CLIENTS = new ConcurrentHashMap<>();
+
+  /**
+   * Paths already resolved by {@link #resolve(URI, boolean)}, by URI string, so that hot URIs skip
+   * URI parsing and the file system lookup
+   */
+  private static final DirectMappedCache<String, S3Path> URI_CACHE = new DirectMappedCache<>(4096);
 
   /**
    * Test hook
@@ -145,9 +269,9 @@ public class S3FileSystemProvider extends FileSystemProvider {
     S3Client newDefaultClient = clientBuilderSupplier.get().build();
     defaultClientBuilderSupplierReference.set(clientBuilderSupplier);
     defaultClientReference.set(newDefaultClient);
-    synchronized (FS_CACHE) {
-      FS_CACHE.clear();
-    }
+    FS_CACHE.clear();
+    URI_CACHE.invalidateAll();
+    REGION_CLIENTS.clear();
   }
 
   private static S3ClientBuilder defaultClientBuilder() {
@@ -207,9 +331,10 @@ public class S3FileSystemProvider extends FileSystemProvider {
         throw new NoSuchFileException(s3Path.toString());
       }
     } else {
+      if (s3Path.getFileSystem().isKnownMissing(s3Path.getKey()))
+        throw new NoSuchFileException(s3Path.toString());
       try {
-        s3Path.getFileSystem().getClient().headObject(
-            HeadObjectRequest.builder().bucket(s3Path.bucketName()).key(s3Path.getKey()).build());
+        s3Path.getFileSystem().headObject(s3Path.getKey());
       } catch (AccessDeniedException e) {
         throw new java.nio.file.AccessDeniedException(s3Path.toString());
       } catch (NoSuchKeyException e) {
@@ -230,30 +355,121 @@ public class S3FileSystemProvider extends FileSystemProvider {
     }
 
     if (s3Source.isDirectory()) {
-      throw new IllegalArgumentException("Do not support copying directories");
+      throw new IllegalArgumentException(
+          "Do not support copying directories, use copyDirectory instead");
     }
     if (s3Target.isDirectory()) {
       s3Target = s3Target
           .resolve(s3Source.getFileName().getName(s3Source.getFileName().getNameCount() - 1));
     }
 
-    if (asList(options).contains(StandardCopyOption.REPLACE_EXISTING)) {
-      // I don't care if the target exists or not
-    } else if (exists(s3Target)) {
+    // If REPLACE_EXISTING is given, I don't care if the target exists or not. Otherwise, the copy
+    // fails if the target exists.
+    copyObject(s3Source, s3Target, null,
+        !asList(options).contains(StandardCopyOption.REPLACE_EXISTING));
+  }
+
+  /**
+   * The largest object S3 will copy with a single CopyObject request
+   */
+  private static final long MAX_COPY_OBJECT_SIZE = 5L * 1024L * 1024L * 1024L;
+
+  /**
+   * Copies a single object. Uses a server-side copy when both paths are served by the same client,
+   * and a pipelined copy through this process otherwise.
+   *
+   * @param size the size of the source object, if known, or {@code null}
+   * @param createNew if {@code true}, the copy fails if the target exists, which is checked with a
+   *        HEAD request first. If {@code false}, the target is replaced if it exists.
+   * @throws FileAlreadyExistsException if {@code createNew} is given and the target exists
+   */
+  /* default */ void copyObject(S3Path source, S3Path target, Long size, boolean createNew)
+      throws IOException {
+    final boolean serverSide = isServerSideCopySupported(source, target)
+        && (size == null || size.longValue() <= MAX_COPY_OBJECT_SIZE);
+    if (createNew && exists(target)) {
       // The target exists, and I'm not allowed to replace it.
-      throw new FileAlreadyExistsException(s3Target.toString());
+      throw new FileAlreadyExistsException(target.toString());
     }
 
-    // TODO We really should do this with S3 copy operations
-    try (InputStream in = newInputStream(s3Source); OutputStream out = newOutputStream(s3Target)) {
-      MoreByteStreams.drain(in, out);
+    if (serverSide) {
+      try {
+        target.getFileSystem().getClient()
+            .copyObject(CopyObjectRequest.builder()
+                .copySource(
+                    UrlEncoding.urlencodePath(source.bucketName() + SEPARATOR + source.getKey()))
+                .bucket(target.bucketName()).key(target.getKey()).build());
+      } catch (NoSuchKeyException e) {
+        throw new NoSuchFileException(source.toString());
+      }
+    } else {
+      S3PipelinedCopy.copy(source, target);
+    }
+    target.getFileSystem().invalidateKey(target.getKey());
+  }
+
+  private static boolean isServerSideCopySupported(S3Path source, S3Path target) {
+    return source.getFileSystem().getClient() == target.getFileSystem().getClient()
+        || source.getFileSystem() == target.getFileSystem();
+  }
+
+  /**
+   * Copies every object under the {@code source} directory to the same relative key under the
+   * {@code target} directory. Objects are copied in parallel, server-side where possible, while the
+   * source listing is streamed.
+   *
+   * @param source the directory to copy
+   * @param target the directory to copy into
+   * @param listener receives per-object progress and failures
+   * @param options supports {@link StandardCopyOption#REPLACE_EXISTING}, which allows copying into
+   *        a non-empty target directory
+   * @throws FileAlreadyExistsException if the target directory is not empty and
+   *         {@code REPLACE_EXISTING} is not given
+   * @throws NoSuchFileException if the source directory is empty
+   * @throws IOException if any object failed to copy, after all objects have been attempted
+   */
+  public void copyDirectory(Path source, Path target, S3BulkOperationListener listener,
+      CopyOption... options) throws IOException {
+    if (options == null)
+      options = new CopyOption[0];
+    S3Path s3Source = requireNonNull(MorePaths.toS3Path(source));
+    S3Path s3Target = requireNonNull(MorePaths.toS3Path(target));
+    if (!s3Source.isDirectory())
+      throw new NotDirectoryException(s3Source.toString());
+    S3BulkOperations.copyDirectory(s3Source, s3Target,
+        asList(options).contains(StandardCopyOption.REPLACE_EXISTING), false,
+        requireNonNull(listener));
+  }
+
+  /**
+   * Moves every object under the {@code source} directory to the same relative key under the
+   * {@code target} directory. This works like {@link #copyDirectory}, except each source object is
+   * deleted once it has been copied. Source objects are deleted in batches.
+   *
+   * @see #copyDirectory(Path, Path, S3BulkOperationListener, CopyOption...)
+   */
+  public void moveDirectory(Path source, Path target, S3BulkOperationListener listener,
+      CopyOption... options) throws IOException {
+    if (options == null)
+      options = new CopyOption[0];
+    S3Path s3Source = requireNonNull(MorePaths.toS3Path(source));
+    S3Path s3Target = requireNonNull(MorePaths.toS3Path(target));
+    if (!s3Source.isDirectory())
+      throw new NotDirectoryException(s3Source.toString());
+    if (asList(options).contains(StandardCopyOption.ATOMIC_MOVE)) {
+      throw new AtomicMoveNotSupportedException(s3Source.toString(), s3Target.toString(),
+          "S3 does not support atomic move operations");
     }
+    S3BulkOperations.copyDirectory(s3Source, s3Target,
+        asList(options).contains(StandardCopyOption.REPLACE_EXISTING), true,
+        requireNonNull(listener));
   }
 
   private boolean exists(S3Path path) {
+    if (path.getFileSystem().isKnownMissing(path.getKey()))
+      return false;
     try {
-      path.getFileSystem().getClient().headObject(
-          HeadObjectRequest.builder().bucket(path.bucketName()).key(path.getKey()).build());
+      path.getFileSystem().headObject(path.getKey());
       return true;
     } catch (NoSuchBucketException e) {
       return false;
@@ -284,6 +500,7 @@ public class S3FileSystemProvider extends FileSystemProvider {
     s3Path.getFileSystem().getClient().putObject(
         PutObjectRequest.builder().bucket(s3Path.bucketName()).key(s3Key).build(),
         RequestBody.empty());
+    s3Path.getFileSystem().invalidateKey(s3Key);
   }
 
   /**
@@ -296,12 +513,108 @@ public class S3FileSystemProvider extends FileSystemProvider {
     S3Path s3Path = requireNonNull(MorePaths.toS3Path(path));
     s3Path.getFileSystem().getClient().deleteObject(
         DeleteObjectRequest.builder().bucket(s3Path.bucketName()).key(s3Path.getKey()).build());
+    s3Path.getFileSystem().invalidateKey(s3Path.getKey());
+  }
+
+  /**
+   * Deletes every object under the given directory using batched DeleteObjects requests, up to
+   * 1000 keys each. Batches are built from a streaming listing and deleted in parallel.
+   *
+   * @param path the directory to delete
+   * @param listener receives per-object progress and failures
+   * @throws NotDirectoryException if the path is not a directory
+   * @throws NoSuchFileException if the directory is empty
+   * @throws IOException if any object failed to delete, after all objects have been attempted
+   */
+  public void deleteDirectory(Path path, S3BulkOperationListener listener) throws IOException {
+    S3Path s3Path = requireNonNull(MorePaths.toS3Path(path));
+    if (!s3Path.isDirectory())
+      throw new NotDirectoryException(s3Path.toString());
+    S3BulkOperations.deleteDirectory(s3Path, requireNonNull(listener));
+  }
+
+  /**
+   * Deletes the given objects using batched DeleteObjects requests, up to 1000 keys each. Batches
+   * are deleted in parallel. Like {@link #delete(Path)}, this does not fail if an object does not
+   * exist and does not recurse into directories.
+   *
+   * @param paths the objects to delete
+   * @param listener receives per-object progress and failures
+   * @throws IOException if any object failed to delete, after all objects have been attempted
+   */
+  public void deleteAll(Collection<? extends Path> paths, S3BulkOperationListener listener)
+      throws IOException {
+    List<S3Path> s3Paths =
+        paths.stream().map(p -> requireNonNull(MorePaths.toS3Path(p))).collect(toList());
+    S3BulkOperations.deleteObjects(s3Paths, requireNonNull(listener));
+  }
+
+  /**
+   * Walks a file tree. This method works like {@link Files#walkFileTree(Path, FileVisitor)}, except
+   * that it lists the whole tree with a single non-delimited listing instead of one listing per
+   * directory, which costs roughly one request per 1000 objects regardless of tree depth.
+   * Siblings are visited in key order, and the attributes passed to the visitor come from the
+   * listing.
+   *
+   * @param start the starting directory
+   * @param visitor the file visitor to invoke for each file
+   * @return the starting directory
+   */
+  public Path walkFileTree(Path start, FileVisitor<? super Path> visitor) throws IOException {
+    return walkFileTree(start, Integer.MAX_VALUE, visitor);
+  }
+
+  /**
+   * Walks a file tree. This method works like
+   * {@link Files#walkFileTree(Path, Set, int, FileVisitor)}, with the differences described in
+   * {@link #walkFileTree(Path, FileVisitor)}.
+   *
+   * @param start the starting directory
+   * @param maxDepth the maximum number of directory levels to visit
+   * @param visitor the file visitor to invoke for each file
+   * @return the starting directory
+   */
+  public Path walkFileTree(Path start, int maxDepth, FileVisitor<? super Path> visitor)
+      throws IOException {
+    S3Path s3Start = requireNonNull(MorePaths.toS3Path(start));
+    if (!s3Start.isDirectory())
+      throw new NotDirectoryException(s3Start.toString());
+    new S3FileTreeWalker(s3Start, maxDepth, null, requireNonNull(visitor)).walk();
+    return start;
   }
 
+  /**
+   * Walks only the part of a file tree that can match the given matcher. Paths relative to
+   * {@code start} are matched, and only matching files are passed to
+   * {@link FileVisitor#visitFile}. If the matcher came from {@link S3FileSystem#getPathMatcher},
+   * the literal prefix of its pattern is sent to S3 with the listing, and directories that cannot
+   * contain a match are skipped without being visited. For example, walking with
+   * {@code glob:logs/2024-05-*}{@code /*.gz} lists only keys under {@code logs/2024-05-}. Otherwise
+   * this method works like {@link #walkFileTree(Path, FileVisitor)}, except that a start directory
+   * that does not exist is walked as if it were empty.
+   *
+   * @param start the starting directory
+   * @param matcher selects the files to visit
+   * @param visitor the file visitor to invoke for each file
+   * @return the starting directory
+   */
+  public Path walkFileTree(Path start, PathMatcher matcher, FileVisitor<? super Path> visitor)
+      throws IOException {
+    S3Path s3Start = requireNonNull(MorePaths.toS3Path(start));
+    if (!s3Start.isDirectory())
+      throw new NotDirectoryException(s3Start.toString());
+    new S3FileTreeWalker(s3Start, Integer.MAX_VALUE, requireNonNull(matcher),
+        requireNonNull(visitor)).walk();
+    return start;
+  }
+
+  /**
+   * Returns the file store of the path's bucket
+   */
   @Override
   public FileStore getFileStore(Path path) throws IOException {
-    // Always null.
-    return null;
+    S3Path s3Path = requireNonNull(MorePaths.toS3Path(path));
+    return s3Path.getFileSystem().getFileStore();
   }
 
   @Override
@@ -321,34 +634,114 @@ public class S3FileSystemProvider extends FileSystemProvider {
    *         permission.
    */
   S3FileSystem getFileSystem(URI uri, boolean create) {
-    S3Uri s3uri = S3Uri.fromUri(uri);
+    return resolve(uri, create).getFileSystem();
+  }
 
-    S3FileSystem result;
-    synchronized (FS_CACHE) {
-      result = FS_CACHE.get(s3uri.getId());
-    }
+  /**
+   * Returns the path for the given URI in its file system, creating the file system if allowed.
+   * Results are cached by URI string.
+   *
+   * @throws FileSystemNotFoundException If the file system does not exist and create is false
+   */
+  private S3Path resolve(URI uri, boolean create) {
+    final String uriString = uri.toString();
 
-    if (result != null) {
+    // A closed file system's paths must not be handed out again, so fall through and let its
+    // getPath throw
+    S3Path result = URI_CACHE.get(uriString);
+    if (result != null && result.getFileSystem().isOpen()) {
       return result;
     }
 
-    if (!create) {
-      throw new FileSystemNotFoundException(uri.toString());
+    S3Uri s3uri = S3Uri.fromUri(uri);
+
+    S3FileSystem fileSystem = FS_CACHE.get(s3uri.getId());
+    if (fileSystem == null) {
+      if (!create) {
+        throw new FileSystemNotFoundException(uri.toString());
+      }
+      fileSystem = createFileSystem(s3uri);
     }
 
-    String region = Buckets.getBucketRegion(getDefaultClient(), s3uri.getBucket());
+    result = fileSystem.getPath(uri.getScheme() + ":/" + uri.getPath());
 
-    S3Client client = defaultClientBuilder().region(region).build();
+    URI_CACHE.put(uriString, result);
 
-    S3FileSystem newFileSystem = new S3FileSystem(this, client, s3uri.getBucket());
+    return result;
+  }
+
+  /**
+   * Creates the file system for the given URI, unless another thread creates it first. Only one
+   * thread creates each file system, and any others wait for it, so each new bucket costs one
+   * region lookup and no throwaway clients.
+   */
+  private S3FileSystem createFileSystem(S3Uri s3uri) {
+    final String id = s3uri.getId();
 
-    synchronized (FS_CACHE) {
-      result = FS_CACHE.get(s3uri.getId());
+    final CompletableFuture<S3FileSystem> creation = new CompletableFuture<>();
+    final CompletableFuture<S3FileSystem> existing = FS_CREATIONS.putIfAbsent(id, creation);
+    if (existing != null) {
+      try {
+        return existing.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw e;
+      }
+    }
+
+    try {
+      // Another thread may have finished creating it since we checked
+      S3FileSystem result = FS_CACHE.get(id);
       if (result == null) {
-        FS_CACHE.put(s3uri.getId(), result = newFileSystem);
+        String region = getBucketRegion(s3uri.getBucket());
+
+        S3Client client = getRegionClient(region);
+
+        result = new S3FileSystem(this, client, s3uri.getBucket());
+
+        FS_CACHE.put(id, result);
       }
+      creation.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      creation.completeExceptionally(e);
+      throw e;
+    } finally {
+      FS_CREATIONS.remove(id, creation);
     }
+  }
+
+  private static S3Client getRegionClient(String region) {
+    return REGION_CLIENTS.computeIfAbsent(region, r -> defaultClientBuilder().region(r).build());
+  }
 
+  private String getBucketRegion(String bucket) {
+    BucketRegionCache regions = getBucketRegionCache();
+    String result = regions.get(bucket);
+    if (result != null && !regions.isConfirmed(bucket)) {
+      // The region was saved by an earlier run, and the bucket may have moved since. Ask the bucket
+      // once, in that region, before building a file system on it. S3 answers with the region the
+      // bucket is really in, or with a redirect, which fails the lookup.
+      String actual;
+      try {
+        actual = Buckets.getBucketRegion(getRegionClient(result), bucket);
+      } catch (RuntimeException e) {
+        actual = null;
+      }
+      if (result.equals(actual)) {
+        regions.confirm(bucket, result);
+      } else {
+        regions.invalidate(bucket, result);
+        result = actual;
+        if (result != null)
+          regions.put(bucket, result);
+      }
+    }
+    if (result == null) {
+      result = Buckets.getBucketRegion(getDefaultClient(), bucket);
+      regions.put(bucket, result);
+    }
     return result;
   }
 
@@ -356,7 +749,7 @@ public class S3FileSystemProvider extends FileSystemProvider {
   public Path getPath(URI uri) {
     if (uri == null)
       throw new NullPointerException();
-    return getFileSystem(uri, true).getPath(uri.getScheme() + ":/" + uri.getPath());
+    return resolve(uri, true);
   }
 
   @Override
@@ -405,6 +798,10 @@ public class S3FileSystemProvider extends FileSystemProvider {
       throw new AtomicMoveNotSupportedException(s3Source.toString(), s3Target.toString(),
           "S3 does not support atomic move operations");
     }
+    if (s3Source.isDirectory()) {
+      moveDirectory(s3Source, s3Target, S3BulkOperationListener.NOP, options);
+      return;
+    }
     copy(s3Source, s3Target, options);
     delete(s3Source);
   }
@@ -460,7 +857,9 @@ public class S3FileSystemProvider extends FileSystemProvider {
 
     S3Path s3Path = requireNonNull(MorePaths.toS3Path(path));
 
-    // TODO These checks are supposed to be atomic, but are not
+    // TODO These checks are supposed to be atomic, but are not. S3 supports If-None-Match on
+    // PutObject, which would make CREATE_NEW atomic and save this HEAD, but the version of the SDK
+    // we build against cannot send it.
     if (hasCreateNew || !hasCreate) {
       // If both CREATE_NEW and CREATE are given, then CREATE is ignored. This option requires that
       // the file be created, so must not exist before the operation.
@@ -492,8 +891,10 @@ public class S3FileSystemProvider extends FileSystemProvider {
 
     CountDownLatch latch = new CountDownLatch(1);
 
-    Runnable worker =
-        newOutputStreamWriter(in, s3Path, maybeContentType, maybeContentLength, latch);
+    AtomicReference<Exception> problem = new AtomicReference<>();
+
+    Runnable worker = newOutputStreamWriter(in, s3Path, maybeContentType, maybeContentLength,
+        latch, problem);
 
     try {
       getExecutor().execute(worker);
@@ -502,6 +903,24 @@ public class S3FileSystemProvider extends FileSystemProvider {
     }
 
     OutputStream result = new FilterOutputStream(out) {
+      @Override
+      public void write(int b) throws IOException {
+        try {
+          out.write(b);
+        } catch (IOException e) {
+          throw writerProblemOr(problem, e);
+        }
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        try {
+          out.write(b, off, len);
+        } catch (IOException e) {
+          throw writerProblemOr(problem, e);
+        }
+      }
+
       @Override
       public void close() throws IOException {
         try {
@@ -515,6 +934,8 @@ public class S3FileSystemProvider extends FileSystemProvider {
             throw new InterruptedIOException();
           }
         }
+        if (problem.get() != null)
+          throw writerProblemOr(problem, null);
       }
     };
 
@@ -548,9 +969,24 @@ public class S3FileSystemProvider extends FileSystemProvider {
     return unmodifiableSet(result);
   }
 
+  /**
+   * The writer runs on another thread, so its failures reach the caller through the output stream.
+   * When the writer fails, it closes its end of the pipe so blocked writes fail instead of waiting
+   * forever, and the output stream reports the writer's failure instead of the broken pipe.
+   */
+  private static IOException writerProblemOr(AtomicReference<Exception> problem,
+      IOException otherwise) {
+    Exception e = problem.get();
+    if (e == null)
+      return otherwise;
+    if (e instanceof IOException)
+      return (IOException) e;
+    return new IOException("Failed to write S3 object", e);
+  }
+
   // TODO We now buffer in the bean mapper. What should we do here?
   private Runnable newOutputStreamWriter(InputStream in, S3Path target, String contentType,
-      Long contentLength, CountDownLatch latch) {
+      Long contentLength, CountDownLatch latch, AtomicReference<Exception> problem) {
     return () -> {
       try {
         int b0 = in.read();
@@ -566,9 +1002,15 @@ public class S3FileSystemProvider extends FileSystemProvider {
                   throw new IOException("already opened");
                 return pin;
               }));
+          target.getFileSystem().invalidateKey(target.getKey());
         }
       } catch (Exception e) {
-        e.printStackTrace();
+        problem.set(e);
+        try {
+          in.close();
+        } catch (IOException e2) {
+          // We're already failing. The original problem is more interesting.
+        }
       } finally {
         latch.countDown();
       }
@@ -584,6 +1026,27 @@ public class S3FileSystemProvider extends FileSystemProvider {
     return new S3DirectoryStream(s3Path, filter);
   }
 
+  /**
+   * Opens a directory stream over the entries whose names match the given glob. This method works
+   * like {@link Files#newDirectoryStream(Path, String)}, except that the literal prefix of the glob
+   * is sent to S3 with the listing, so S3 returns only the entries that could match. For example,
+   * the glob {@code 2024-05-*} lists only keys starting with {@code 2024-05-}, no matter how many
+   * other entries the directory has.
+   *
+   * @param path the path to the directory
+   * @param glob the glob pattern
+   * @return a new and open directory stream
+   * @throws NotDirectoryException if the path is not a directory
+   */
+  public DirectoryStream<Path> newDirectoryStream(Path path, String glob) throws IOException {
+    S3Path s3Path = requireNonNull(MorePaths.toS3Path(path));
+    if (!s3Path.isDirectory())
+      throw new NotDirectoryException(s3Path.toString());
+    final S3PathMatcher matcher = S3PathMatcher.compile("glob:" + glob);
+    return new S3DirectoryStream(s3Path, matcher.literalPrefix(),
+        entry -> matcher.matches(entry.getFileName()));
+  }
+
   /**
    * Reads a set of file attributes as a bulk operation. Largely equivalent to
    * {@code readAttributes(Path path, Class<A> type, LinkOption... options)} where the returned
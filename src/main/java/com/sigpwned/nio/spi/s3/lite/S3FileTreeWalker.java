@@ -0,0 +1,221 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.stream.Stream;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+
+/**
+ * Walks a file tree from a single non-delimited listing of the start directory. Keys come back from
+ * S3 in lexicographic order, so all keys under any given directory prefix are contiguous, and the
+ * directory structure can be rebuilt from the key stream with a stack of open directories. This
+ * costs one request per page of keys no matter how deep the tree is, whereas walking with
+ * {@link S3DirectoryStream} costs at least one request per directory.
+ *
+ * <p>
+ * Visitor callbacks follow the contract of {@link java.nio.file.Files#walkFileTree}, except that
+ * siblings are visited in key order, and an error listing the tree propagates to the caller rather
+ * than being passed to {@link FileVisitor#postVisitDirectory}.
+ *
+ * <p>
+ * An optional matcher restricts the walk to files whose paths relative to the start directory
+ * match. When the matcher is an {@link S3PathMatcher}, the literal prefix of its pattern narrows
+ * the listing, and directories that cannot contain a match are skipped without being visited.
+ *
+ * <p>
+ * If the file system has a fresh listing index that covers the start directory, the walk reads
+ * from the index and sends no requests.
+ */
+final class S3FileTreeWalker {
+  private static final char PATH_SEPARATOR_CHAR = S3FileSystemProvider.SEPARATOR.charAt(0);
+
+  private final S3Path start;
+  private final int maxDepth;
+  private final PathMatcher matcher;
+  private final FileVisitor<? super Path> visitor;
+  private final String startKey;
+  private final String listingPrefix;
+
+  /**
+   * Open directories, innermost first, as keys relative to the start directory. The start
+   * directory itself is the empty string.
+   */
+  private final Deque<String> open;
+
+  /**
+   * @param matcher if not null, only files whose relative paths match are visited
+   */
+  S3FileTreeWalker(S3Path start, int maxDepth, PathMatcher matcher,
+      FileVisitor<? super Path> visitor) {
+    if (maxDepth < 0)
+      throw new IllegalArgumentException("maxDepth must not be negative");
+    this.start = requireNonNull(start);
+    this.maxDepth = maxDepth;
+    this.matcher = matcher;
+    this.visitor = requireNonNull(visitor);
+    this.startKey = S3BulkOperations.directoryKey(start);
+    this.listingPrefix = matcher instanceof S3PathMatcher
+        ? startKey + ((S3PathMatcher) matcher).literalPrefix()
+        : startKey;
+    this.open = new ArrayDeque<>();
+  }
+
+  void walk() throws IOException {
+    final S3KeyListing listing = start.getFileSystem().findListing(listingPrefix);
+    try (Stream<S3Object> objects = listing != null ? listing.objects(listingPrefix)
+        : S3BulkOperations.listObjects(start.getFileSystem(), listingPrefix)) {
+      walk(objects.iterator());
+    }
+  }
+
+  private void walk(Iterator<S3Object> objects) throws IOException {
+    // If the listing was narrowed, no results only means nothing matched
+    if (!objects.hasNext() && !startKey.isEmpty() && listingPrefix.equals(startKey)) {
+      visitor.visitFileFailed(start, new NoSuchFileException(start.toString()));
+      return;
+    }
+
+    if (maxDepth == 0) {
+      visitor.visitFile(start, S3BasicFileAttributes.DIRECTORY);
+      return;
+    }
+
+    if (visitor.preVisitDirectory(start,
+        S3BasicFileAttributes.DIRECTORY) != FileVisitResult.CONTINUE)
+      return;
+    open.push("");
+
+    // Entries whose parent directory starts with this prefix are skipped, if not null
+    String skip = null;
+
+    objects: while (objects.hasNext()) {
+      S3Object object = objects.next();
+      String relativeKey = object.key().substring(startKey.length());
+      String parent = relativeKey.substring(0, relativeKey.lastIndexOf(PATH_SEPARATOR_CHAR) + 1);
+
+      // Leave every open directory this entry is not inside
+      while (!parent.startsWith(open.peek())) {
+        S3Path directory = directoryPath(open.pop());
+        if (visitor.postVisitDirectory(directory, null) == FileVisitResult.TERMINATE)
+          return;
+      }
+
+      if (skip != null && parent.startsWith(skip))
+        continue;
+      skip = null;
+
+      // Enter every directory between the innermost open directory and this entry
+      while (open.peek().length() < parent.length()) {
+        String directory = parent.substring(0, parent.indexOf(PATH_SEPARATOR_CHAR,
+            open.peek().length()) + 1);
+        if (!couldMatchBelow(directory)) {
+          skip = directory;
+          continue objects;
+        }
+
+        FileVisitResult result;
+        if (depthOf(directory) >= maxDepth) {
+          result = visitor.visitFile(directoryPath(directory), S3BasicFileAttributes.DIRECTORY);
+          if (result == FileVisitResult.TERMINATE)
+            return;
+          skip = result == FileVisitResult.SKIP_SIBLINGS ? open.peek() : directory;
+          continue objects;
+        }
+
+        result = visitor.preVisitDirectory(directoryPath(directory),
+            S3BasicFileAttributes.DIRECTORY);
+        switch (result) {
+          case CONTINUE:
+            open.push(directory);
+            break;
+          case SKIP_SUBTREE:
+            skip = directory;
+            continue objects;
+          case SKIP_SIBLINGS:
+            skip = open.peek();
+            continue objects;
+          case TERMINATE:
+          default:
+            return;
+        }
+      }
+
+      // A directory marker object only tells us the directory exists, which we now know
+      if (relativeKey.length() == parent.length())
+        continue;
+
+      if (!matches(relativeKey))
+        continue;
+
+      S3BasicFileAttributes attributes = S3BasicFileAttributes.fromS3Object(object);
+      S3Path file =
+          start.getFileSystem().getPathForKey(object.key()).withListedAttributes(attributes);
+      FileVisitResult result = visitor.visitFile(file, attributes);
+      if (result == FileVisitResult.TERMINATE)
+        return;
+      if (result == FileVisitResult.SKIP_SIBLINGS)
+        skip = parent;
+    }
+
+    while (!open.isEmpty()) {
+      if (visitor.postVisitDirectory(directoryPath(open.pop()), null) == FileVisitResult.TERMINATE)
+        return;
+    }
+  }
+
+  private boolean matches(String relativeKey) {
+    if (matcher == null)
+      return true;
+    if (matcher instanceof S3PathMatcher)
+      return ((S3PathMatcher) matcher).matches(relativeKey);
+    return matcher.matches(start.getFileSystem().getPath(relativeKey));
+  }
+
+  private boolean couldMatchBelow(String relativeDirectoryKey) {
+    if (matcher instanceof S3PathMatcher)
+      return ((S3PathMatcher) matcher).couldMatchBelow(relativeDirectoryKey);
+    return true;
+  }
+
+  private S3Path directoryPath(String relativeKey) {
+    if (relativeKey.isEmpty())
+      return start;
+    return start.getFileSystem().getPathForKey(startKey + relativeKey)
+        .withListedAttributes(S3BasicFileAttributes.DIRECTORY);
+  }
+
+  private static int depthOf(String relativeDirectoryKey) {
+    int result = 0;
+    for (int i = 0; i < relativeDirectoryKey.length(); i++)
+      if (relativeDirectoryKey.charAt(i) == PATH_SEPARATOR_CHAR)
+        result = result + 1;
+    return result;
+  }
+}
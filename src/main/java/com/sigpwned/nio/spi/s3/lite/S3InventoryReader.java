@@ -0,0 +1,308 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import com.sigpwned.aws.sdk.lite.s3.exception.NoSuchKeyException;
+import com.sigpwned.aws.sdk.lite.s3.model.GetObjectRequest;
+import com.sigpwned.httpmodel.core.util.MoreByteStreams;
+import com.sigpwned.nio.spi.s3.lite.util.BoundedExecutor;
+import com.sigpwned.nio.spi.s3.lite.util.Json;
+
+/**
+ * Builds a listing from an S3 Inventory report instead of from ListObjectsV2. The report's
+ * manifest.json names its data files, which are gzipped CSV files in the report's bucket. The data
+ * files are downloaded, decompressed, and parsed in parallel, each into its own sorted
+ * {@link S3KeyListing}, and the results are merged into one listing. Only CSV reports are
+ * supported. For versioned inventories, only the latest version of each object is kept, and
+ * delete markers are dropped.
+ */
+final class S3InventoryReader {
+  private static final String CSV_FORMAT = "CSV";
+
+  private static final String KEY_FIELD = "Key";
+  private static final String SIZE_FIELD = "Size";
+  private static final String LAST_MODIFIED_DATE_FIELD = "LastModifiedDate";
+  private static final String ETAG_FIELD = "ETag";
+  private static final String IS_LATEST_FIELD = "IsLatest";
+  private static final String IS_DELETE_MARKER_FIELD = "IsDeleteMarker";
+
+  private S3InventoryReader() {}
+
+  /**
+   * Reads every object under the given prefix from the inventory report with the given manifest
+   *
+   * @param manifest the report's manifest.json, which may be in another bucket
+   * @param fileSystem the file system of the bucket the report describes
+   * @throws NoSuchFileException if the manifest or a data file does not exist
+   * @throws IOException if the report is not a CSV report of the file system's bucket
+   */
+  static S3KeyListing read(S3Path manifest, S3FileSystem fileSystem, String prefix)
+      throws IOException {
+    final Map<?, ?> document;
+    try {
+      Object parsed = Json.parse(new String(readObject(manifest, manifest.getKey()), UTF_8));
+      if (!(parsed instanceof Map))
+        throw new IOException("Inventory manifest is not an object: " + manifest);
+      document = (Map<?, ?>) parsed;
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid inventory manifest: " + manifest, e);
+    }
+
+    if (!fileSystem.getBucketName().equals(document.get("sourceBucket")))
+      throw new IOException(format("Inventory %s does not describe bucket %s", manifest,
+          fileSystem.getBucketName()));
+    if (!CSV_FORMAT.equals(document.get("fileFormat")))
+      throw new IOException(format("Unsupported inventory format %s in %s",
+          document.get("fileFormat"), manifest));
+    if (!(document.get("fileSchema") instanceof String) || !(document.get("files") instanceof List))
+      throw new IOException("Invalid inventory manifest: " + manifest);
+
+    final Schema schema = new Schema(((String) document.get("fileSchema")).split(","));
+    if (schema.key == -1)
+      throw new IOException("Inventory has no Key field: " + manifest);
+
+    final List<String> dataKeys = new ArrayList<>();
+    for (Object file : (List<?>) document.get("files")) {
+      if (!(file instanceof Map) || !(((Map<?, ?>) file).get("key") instanceof String))
+        throw new IOException("Invalid inventory manifest: " + manifest);
+      dataKeys.add((String) ((Map<?, ?>) file).get("key"));
+    }
+
+    final S3FileSystemProvider provider = fileSystem.provider();
+    final S3KeyListing[] shards = new S3KeyListing[dataKeys.size()];
+    final AtomicReference<IOException> problem = new AtomicReference<>();
+    final BoundedExecutor workers =
+        new BoundedExecutor(provider.getExecutor(), provider.getBulkOperationParallelism());
+    for (int i = 0; i < dataKeys.size(); i++) {
+      final int shard = i;
+      workers.execute(() -> {
+        try {
+          shards[shard] = readDataFile(manifest, dataKeys.get(shard), schema, prefix);
+        } catch (IOException | RuntimeException e) {
+          problem.compareAndSet(null, S3BulkOperations.toIOException(e));
+        }
+      });
+    }
+    workers.await();
+
+    if (problem.get() != null)
+      throw problem.get();
+
+    return merge(prefix, shards);
+  }
+
+  /**
+   * The column of each field we use, or -1 if the report does not have it
+   */
+  private static final class Schema {
+    final int key;
+    final int size;
+    final int lastModifiedDate;
+    final int eTag;
+    final int isLatest;
+    final int isDeleteMarker;
+
+    Schema(String[] fields) {
+      List<String> names = new ArrayList<>(fields.length);
+      for (String field : fields)
+        names.add(field.trim());
+      this.key = names.indexOf(KEY_FIELD);
+      this.size = names.indexOf(SIZE_FIELD);
+      this.lastModifiedDate = names.indexOf(LAST_MODIFIED_DATE_FIELD);
+      this.eTag = names.indexOf(ETAG_FIELD);
+      this.isLatest = names.indexOf(IS_LATEST_FIELD);
+      this.isDeleteMarker = names.indexOf(IS_DELETE_MARKER_FIELD);
+    }
+  }
+
+  private static final class Entry {
+    final String key;
+    final long size;
+    final long lastModified;
+    final String eTag;
+
+    Entry(String key, long size, long lastModified, String eTag) {
+      this.key = key;
+      this.size = size;
+      this.lastModified = lastModified;
+      this.eTag = eTag;
+    }
+  }
+
+  private static S3KeyListing readDataFile(S3Path manifest, String dataKey, Schema schema,
+      String prefix) throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    try (BufferedReader lines = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(openObject(manifest, dataKey), 64 * 1024), UTF_8))) {
+      for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+        if (line.isEmpty())
+          continue;
+        List<String> fields = parseCsvLine(line);
+        if (schema.isLatest != -1 && "false".equals(field(fields, schema.isLatest)))
+          continue;
+        if (schema.isDeleteMarker != -1 && "true".equals(field(fields, schema.isDeleteMarker)))
+          continue;
+
+        // Inventory reports URL-encode keys
+        String key = URLDecoder.decode(field(fields, schema.key), "UTF-8");
+        if (!key.startsWith(prefix))
+          continue;
+
+        String size = field(fields, schema.size);
+        String lastModifiedDate = field(fields, schema.lastModifiedDate);
+        String eTag = field(fields, schema.eTag);
+        try {
+          entries.add(new Entry(key, size.isEmpty() ? 0L : Long.parseLong(size),
+              lastModifiedDate.isEmpty() ? 0L : Instant.parse(lastModifiedDate).toEpochMilli(),
+              eTag.isEmpty() ? null : eTag.startsWith("\"") ? eTag : "\"" + eTag + "\""));
+        } catch (NumberFormatException | DateTimeParseException e) {
+          throw new IOException(format("Invalid inventory record in %s: %s", dataKey, line), e);
+        }
+      }
+    }
+
+    entries.sort((a, b) -> S3KeyListing.compareKeys(a.key, b.key));
+
+    S3KeyListing.Builder builder = new S3KeyListing.Builder(prefix);
+    String previous = null;
+    for (Entry entry : entries) {
+      if (entry.key.equals(previous))
+        continue;
+      builder.add(entry.key, entry.size, entry.lastModified, entry.eTag);
+      previous = entry.key;
+    }
+    return builder.build();
+  }
+
+  /**
+   * Merges sorted listings into one, keeping the first of any duplicate keys
+   */
+  private static S3KeyListing merge(String prefix, S3KeyListing[] shards) {
+    final class Cursor {
+      final S3KeyListing listing;
+      final Iterator<String> keys;
+      int index;
+      String key;
+
+      Cursor(S3KeyListing listing) {
+        this.listing = listing;
+        this.keys = listing.keys(0, listing.size());
+        this.index = -1;
+      }
+
+      boolean advance() {
+        if (!keys.hasNext())
+          return false;
+        index = index + 1;
+        key = keys.next();
+        return true;
+      }
+    }
+
+    PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(shards.length, 1),
+        (a, b) -> S3KeyListing.compareKeys(a.key, b.key));
+    for (S3KeyListing shard : shards) {
+      Cursor cursor = new Cursor(shard);
+      if (cursor.advance())
+        cursors.add(cursor);
+    }
+
+    S3KeyListing.Builder builder = new S3KeyListing.Builder(prefix);
+    String previous = null;
+    while (!cursors.isEmpty()) {
+      Cursor cursor = cursors.poll();
+      if (!cursor.key.equals(previous)) {
+        builder.add(cursor.key, cursor.listing.size(cursor.index),
+            cursor.listing.lastModified(cursor.index), cursor.listing.eTag(cursor.index));
+        previous = cursor.key;
+      }
+      if (cursor.advance())
+        cursors.add(cursor);
+    }
+    return builder.build();
+  }
+
+  private static String field(List<String> fields, int index) {
+    return index != -1 && index < fields.size() ? fields.get(index) : "";
+  }
+
+  /**
+   * Splits one line of CSV, as written by S3 Inventory, into fields
+   */
+  private static List<String> parseCsvLine(String line) {
+    List<String> result = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i = i + 1;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        result.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    result.add(field.toString());
+    return result;
+  }
+
+  private static InputStream openObject(S3Path location, String key) throws NoSuchFileException {
+    try {
+      return location.getFileSystem().getClient().getObject(
+          GetObjectRequest.builder().bucket(location.bucketName()).key(key).build());
+    } catch (NoSuchKeyException e) {
+      throw new NoSuchFileException(location.getFileSystem().getPathForKey(key).toString());
+    }
+  }
+
+  private static byte[] readObject(S3Path location, String key) throws IOException {
+    try (InputStream in = openObject(location, key)) {
+      return MoreByteStreams.toByteArray(in);
+    }
+  }
+}
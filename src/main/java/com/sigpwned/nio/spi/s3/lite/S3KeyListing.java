@@ -0,0 +1,382 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+import com.sigpwned.nio.spi.s3.lite.util.FrontCodedStringList;
+import com.sigpwned.nio.spi.s3.lite.util.StorageUsage;
+
+/**
+ * An immutable snapshot of every object under a prefix, sorted in S3 key order, i.e., by UTF-8
+ * bytes, which is the same as code point order. Serves both flat listings for walks and delimited
+ * listings for directory streams without a request.
+ *
+ * <p>
+ * The snapshot is stored compactly so that whole-bucket namespaces can stay resident: keys are
+ * front-coded in a {@link FrontCodedStringList}, sizes and modification times are primitive
+ * arrays, and ETags are packed into one byte array, with ordinary MD5 ETags stored as 16 raw
+ * bytes. A typical entry takes tens of bytes. Paths and attributes are only created when entries
+ * are iterated.
+ */
+final class S3KeyListing {
+  private static final char PATH_SEPARATOR_CHAR = S3FileSystemProvider.SEPARATOR.charAt(0);
+
+  private static final byte NO_ETAG = 0;
+  private static final byte MD5_ETAG = 1;
+  private static final byte OTHER_ETAG = 2;
+
+  private static final int MD5_ETAG_LENGTH = 34;
+
+  private final String prefix;
+  private final FrontCodedStringList keys;
+  private final long[] sizes;
+  private final long[] lastModifiedMillis;
+  private final byte[] eTags;
+  private final int[] eTagOffsets;
+
+  private S3KeyListing(String prefix, FrontCodedStringList keys, long[] sizes,
+      long[] lastModifiedMillis, byte[] eTags, int[] eTagOffsets) {
+    this.prefix = requireNonNull(prefix);
+    this.keys = keys;
+    this.sizes = sizes;
+    this.lastModifiedMillis = lastModifiedMillis;
+    this.eTags = eTags;
+    this.eTagOffsets = eTagOffsets;
+  }
+
+  /**
+   * Collects objects in S3 key order
+   */
+  static final class Builder {
+    private final String prefix;
+    private final FrontCodedStringList.Builder keys;
+    private long[] sizes;
+    private long[] lastModifiedMillis;
+    private byte[] eTags;
+    private int eTagsLength;
+    private int[] eTagOffsets;
+    private int count;
+
+    Builder(String prefix) {
+      this.prefix = requireNonNull(prefix);
+      this.keys = new FrontCodedStringList.Builder();
+      this.sizes = new long[1024];
+      this.lastModifiedMillis = new long[1024];
+      this.eTags = new byte[16 * 1024];
+      this.eTagsLength = 0;
+      this.eTagOffsets = new int[1024 + 1];
+      this.count = 0;
+    }
+
+    Builder add(S3Object o) {
+      return add(o.key(), o.size() != null ? o.size().longValue() : 0L,
+          o.lastModified() != null ? o.lastModified().toEpochMilli() : 0L, o.eTag());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key is not after the last key added
+     */
+    Builder add(String key, long size, long lastModified, String eTag) {
+      if (!key.startsWith(prefix))
+        throw new IllegalArgumentException("key does not start with prefix");
+      keys.add(key);
+      if (count == sizes.length) {
+        sizes = Arrays.copyOf(sizes, count * 2);
+        lastModifiedMillis = Arrays.copyOf(lastModifiedMillis, count * 2);
+        eTagOffsets = Arrays.copyOf(eTagOffsets, count * 2 + 1);
+      }
+      sizes[count] = size;
+      lastModifiedMillis[count] = lastModified;
+      addETag(eTag);
+      count = count + 1;
+      eTagOffsets[count] = eTagsLength;
+      return this;
+    }
+
+    private void addETag(String eTag) {
+      byte[] bytes = eTag != null && !isMd5ETag(eTag) ? eTag.getBytes(UTF_8) : null;
+      int needed = 1 + (bytes != null ? bytes.length : 16);
+      if (eTagsLength + needed > eTags.length)
+        eTags = Arrays.copyOf(eTags, Math.max(eTags.length * 2, eTagsLength + needed));
+      if (eTag == null) {
+        eTags[eTagsLength++] = NO_ETAG;
+      } else if (bytes == null) {
+        eTags[eTagsLength++] = MD5_ETAG;
+        for (int i = 0; i < 16; i++) {
+          int hi = Character.digit(eTag.charAt(1 + 2 * i), 16);
+          int lo = Character.digit(eTag.charAt(2 + 2 * i), 16);
+          eTags[eTagsLength++] = (byte) ((hi << 4) | lo);
+        }
+      } else {
+        eTags[eTagsLength++] = OTHER_ETAG;
+        System.arraycopy(bytes, 0, eTags, eTagsLength, bytes.length);
+        eTagsLength = eTagsLength + bytes.length;
+      }
+    }
+
+    /**
+     * Adds the objects from {@code from}, inclusive, to {@code to}, exclusive
+     */
+    Builder addAll(S3KeyListing listing, int from, int to) {
+      Iterator<String> iterator = listing.keys.iterator(from, to);
+      for (int i = from; i < to; i++)
+        add(iterator.next(), listing.sizes[i], listing.lastModifiedMillis[i], listing.eTag(i));
+      return this;
+    }
+
+    S3KeyListing build() {
+      return new S3KeyListing(prefix, keys.build(), Arrays.copyOf(sizes, count),
+          Arrays.copyOf(lastModifiedMillis, count), Arrays.copyOf(eTags, eTagsLength),
+          Arrays.copyOf(eTagOffsets, count + 1));
+    }
+  }
+
+  /**
+   * Returns {@code true} if the ETag is an MD5 digest in lowercase hex, in quotes
+   */
+  private static boolean isMd5ETag(String eTag) {
+    if (eTag.length() != MD5_ETAG_LENGTH || eTag.charAt(0) != '"'
+        || eTag.charAt(MD5_ETAG_LENGTH - 1) != '"')
+      return false;
+    for (int i = 1; i < MD5_ETAG_LENGTH - 1; i++) {
+      char c = eTag.charAt(i);
+      if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f'))
+        return false;
+    }
+    return true;
+  }
+
+  String getPrefix() {
+    return prefix;
+  }
+
+  int size() {
+    return sizes.length;
+  }
+
+  String key(int index) {
+    return keys.get(index);
+  }
+
+  /**
+   * Returns the keys from {@code from}, inclusive, to {@code to}, exclusive, which is much faster
+   * than calling {@link #key(int)} for each one
+   */
+  Iterator<String> keys(int from, int to) {
+    return keys.iterator(from, to);
+  }
+
+  long size(int index) {
+    return sizes[index];
+  }
+
+  long lastModified(int index) {
+    return lastModifiedMillis[index];
+  }
+
+  String eTag(int index) {
+    int offset = eTagOffsets[index];
+    switch (eTags[offset]) {
+      case MD5_ETAG:
+        StringBuilder result = new StringBuilder(MD5_ETAG_LENGTH).append('"');
+        for (int i = 1; i <= 16; i++) {
+          result.append(Character.forDigit((eTags[offset + i] >> 4) & 0xF, 16));
+          result.append(Character.forDigit(eTags[offset + i] & 0xF, 16));
+        }
+        return result.append('"').toString();
+      case OTHER_ETAG:
+        return new String(eTags, offset + 1, eTagOffsets[index + 1] - offset - 1, UTF_8);
+      case NO_ETAG:
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns {@code true} if the entry at the given index has the same ETag and modification time as
+   * the entry at the given index of the other listing, without decoding either ETag
+   */
+  boolean sameVersion(int index, S3KeyListing other, int otherIndex) {
+    if (lastModifiedMillis[index] != other.lastModifiedMillis[otherIndex])
+      return false;
+    int offset = eTagOffsets[index];
+    int length = eTagOffsets[index + 1] - offset;
+    int otherOffset = other.eTagOffsets[otherIndex];
+    if (other.eTagOffsets[otherIndex + 1] - otherOffset != length)
+      return false;
+    for (int i = 0; i < length; i++)
+      if (eTags[offset + i] != other.eTags[otherOffset + i])
+        return false;
+    return true;
+  }
+
+  /**
+   * The approximate number of bytes this listing occupies
+   */
+  long memoryUsage() {
+    return keys.memoryUsage() + 16L * sizes.length + eTags.length + 4L * eTagOffsets.length;
+  }
+
+  /**
+   * Returns {@code true} if this listing contains every key that starts with the given prefix
+   */
+  boolean covers(String keyPrefix) {
+    return keyPrefix.startsWith(prefix);
+  }
+
+  /**
+   * Returns the index of the first key not less than the given key
+   */
+  int lowerBound(String key) {
+    return keys.lowerBound(key);
+  }
+
+  /**
+   * Returns the index just after the last key that starts with the given prefix
+   */
+  int upperBound(String keyPrefix) {
+    String successor = successor(keyPrefix);
+    return successor != null ? lowerBound(successor) : keys.size();
+  }
+
+  /**
+   * Returns every object whose key starts with the given prefix, in key order
+   */
+  Stream<S3Object> objects(String keyPrefix) {
+    final int from = lowerBound(keyPrefix);
+    final int to = upperBound(keyPrefix);
+    final Iterator<String> iterator = keys.iterator(from, to);
+    return IntStream.range(from, to).mapToObj(i -> S3Object.builder().key(iterator.next())
+        .size(sizes[i]).lastModified(Instant.ofEpochMilli(lastModifiedMillis[i])).eTag(eTag(i))
+        .build());
+  }
+
+  /**
+   * Returns the number and total size of the objects whose keys start with the given prefix
+   */
+  StorageUsage usage(String keyPrefix) {
+    final int from = lowerBound(keyPrefix);
+    final int to = upperBound(keyPrefix);
+    long totalSize = 0L;
+    for (int i = from; i < to; i++)
+      totalSize = totalSize + sizes[i];
+    return new StorageUsage(to - from, totalSize);
+  }
+
+  /**
+   * Returns the entries of a directory, like a delimited listing of the given key prefix: one path
+   * per object directly inside the directory, and one per subdirectory, in key order. The prefix is
+   * usually a directory key, but may go on to the start of a name. Paths are relative, like those
+   * from a listing, and carry their attributes.
+   */
+  Stream<S3Path> children(S3FileSystem fileSystem, String keyPrefix) {
+    final int end = upperBound(keyPrefix);
+    Iterator<S3Path> iterator = new Iterator<S3Path>() {
+      private int index = lowerBound(keyPrefix);
+      private Iterator<String> iterator = keys.iterator(index, end);
+
+      @Override
+      public boolean hasNext() {
+        return index < end;
+      }
+
+      @Override
+      public S3Path next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        String key = iterator.next();
+        int separator = key.indexOf(PATH_SEPARATOR_CHAR, keyPrefix.length());
+        if (separator == -1) {
+          S3Path result =
+              fileSystem.getPathForListedKey(key).withListedAttributes(attributes(index));
+          index = index + 1;
+          return result;
+        }
+
+        // Skip the rest of the subdirectory
+        String subdirectoryKey = key.substring(0, separator + 1);
+        index = Math.min(upperBound(subdirectoryKey), end);
+        iterator = keys.iterator(index, end);
+        return fileSystem.getPathForListedKey(subdirectoryKey)
+            .withListedAttributes(S3BasicFileAttributes.DIRECTORY);
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+
+  private S3BasicFileAttributes attributes(int index) {
+    FileTime lastModifiedTime = FileTime.fromMillis(lastModifiedMillis[index]);
+    return new S3BasicFileAttributes(lastModifiedTime, lastModifiedTime, lastModifiedTime, true,
+        false, sizes[index], eTag(index));
+  }
+
+  /**
+   * Compares keys in S3 order, i.e., by code point
+   */
+  static int compareKeys(String a, String b) {
+    int n = Math.min(a.length(), b.length());
+    for (int i = 0; i < n; i++) {
+      char ca = a.charAt(i);
+      char cb = b.charAt(i);
+      if (ca != cb) {
+        // Surrogates encode code points above every other UTF-16 unit
+        boolean sa = Character.isSurrogate(ca);
+        boolean sb = Character.isSurrogate(cb);
+        if (sa != sb)
+          return sa ? 1 : -1;
+        return ca - cb;
+      }
+    }
+    return a.length() - b.length();
+  }
+
+  /**
+   * Returns the least key greater than every key that starts with the given prefix, or null if
+   * there is none
+   */
+  private static String successor(String keyPrefix) {
+    int end = keyPrefix.length();
+    while (end > 0) {
+      int codePoint = keyPrefix.codePointBefore(end);
+      int start = end - Character.charCount(codePoint);
+      if (codePoint < Character.MAX_CODE_POINT) {
+        int next = codePoint + 1;
+        if (next >= Character.MIN_SURROGATE && next <= Character.MAX_SURROGATE)
+          next = Character.MAX_SURROGATE + 1;
+        return keyPrefix.substring(0, start) + new String(Character.toChars(next));
+      }
+      end = start;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,260 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Request;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Response;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+
+/**
+ * A listing of every object under a prefix, held in memory as a compact {@link S3KeyListing} and
+ * optionally persisted to a local file so later runs can skip listing the prefix. The file holds
+ * the sorted keys, front-coded against the previous key, with each object's size, modification
+ * time, and ETag.
+ *
+ * <p>
+ * The index is refreshed explicitly, either by listing only the keys after the last known key,
+ * which suits append-only layouts, or by re-listing given sub-prefixes that are known to have
+ * changed. A write through the owning file system under the prefix makes the index stale, and a
+ * stale index is not used until it is refreshed.
+ */
+final class S3ListingIndex {
+  private static final int MAGIC = 0x53334C49;
+  private static final int VERSION = 1;
+
+  private final S3FileSystem fileSystem;
+  private final String prefix;
+  private final Path file;
+  private final AtomicLong writeCount;
+  private volatile S3KeyListing listing;
+  private volatile boolean stale;
+
+  private S3ListingIndex(S3FileSystem fileSystem, String prefix, Path file) {
+    this.fileSystem = requireNonNull(fileSystem);
+    this.prefix = requireNonNull(prefix);
+    this.file = file;
+    this.writeCount = new AtomicLong(0L);
+  }
+
+  /**
+   * Loads the index from the given file, or builds it with a full listing and saves it if the file
+   * does not exist or holds a different prefix.
+   *
+   * @param file the file that holds the index, or null to keep the index in memory only
+   */
+  static S3ListingIndex open(S3FileSystem fileSystem, String prefix, Path file)
+      throws IOException {
+    S3ListingIndex result = new S3ListingIndex(fileSystem, prefix, file);
+    S3KeyListing loaded = file != null && Files.exists(file) ? result.load() : null;
+    if (loaded != null) {
+      result.listing = loaded;
+      result.stale = false;
+    } else {
+      result.rebuild();
+    }
+    return result;
+  }
+
+  /**
+   * Creates an in-memory index from a listing obtained some other way, like an inventory report.
+   * Rebuilding the index lists S3 as usual.
+   */
+  static S3ListingIndex of(S3FileSystem fileSystem, S3KeyListing listing) {
+    S3ListingIndex result = new S3ListingIndex(fileSystem, listing.getPrefix(), null);
+    result.listing = listing;
+    result.stale = false;
+    return result;
+  }
+
+  String getPrefix() {
+    return prefix;
+  }
+
+  /**
+   * Returns the listing, or null if it is stale
+   */
+  S3KeyListing current() {
+    return stale ? null : listing;
+  }
+
+  void markStale() {
+    writeCount.incrementAndGet();
+    stale = true;
+  }
+
+  /**
+   * Replaces the index with a full listing of the prefix
+   */
+  synchronized void rebuild() throws IOException {
+    final long writes = writeCount.get();
+    S3KeyListing.Builder builder = new S3KeyListing.Builder(prefix);
+    addListing(builder, prefix);
+    update(builder.build(), writes);
+  }
+
+  /**
+   * Adds the objects after the last known key, assuming no existing object has changed
+   */
+  synchronized void refreshAppended() throws IOException {
+    final long writes = writeCount.get();
+    S3KeyListing current = listing;
+    S3KeyListing.Builder builder =
+        new S3KeyListing.Builder(prefix).addAll(current, 0, current.size());
+    ListObjectsV2Request request = current.size() != 0
+        ? ListObjectsV2Request.builder().bucket(fileSystem.getBucketName()).prefix(prefix)
+            .startAfter(current.key(current.size() - 1)).build()
+        : ListObjectsV2Request.builder().bucket(fileSystem.getBucketName()).prefix(prefix)
+            .build();
+    try (Stream<ListObjectsV2Response> responses =
+        fileSystem.getClient().listObjectsV2Paginator(request).stream()) {
+      responses.forEach(r -> {
+        if (r.hasContents())
+          r.contents().forEach(builder::add);
+      });
+    }
+    update(builder.build(), writes);
+  }
+
+  /**
+   * Re-lists the given sub-prefixes and keeps the rest of the index as it is
+   */
+  synchronized void refresh(List<String> changedPrefixes) throws IOException {
+    final long writes = writeCount.get();
+    for (String changedPrefix : changedPrefixes)
+      if (!changedPrefix.startsWith(prefix))
+        throw new IllegalArgumentException("prefix is not inside the index: " + changedPrefix);
+
+    // Sort, and drop any prefix inside another one
+    List<String> sorted = new ArrayList<>(changedPrefixes);
+    sorted.sort(S3KeyListing::compareKeys);
+    List<String> disjoint = new ArrayList<>(sorted.size());
+    for (String changedPrefix : sorted)
+      if (disjoint.isEmpty() || !changedPrefix.startsWith(disjoint.get(disjoint.size() - 1)))
+        disjoint.add(changedPrefix);
+
+    S3KeyListing current = listing;
+    S3KeyListing.Builder builder = new S3KeyListing.Builder(prefix);
+    int index = 0;
+    for (String changedPrefix : disjoint) {
+      builder.addAll(current, index, current.lowerBound(changedPrefix));
+      addListing(builder, changedPrefix);
+      index = current.upperBound(changedPrefix);
+    }
+    builder.addAll(current, index, current.size());
+
+    update(builder.build(), writes);
+  }
+
+  private void addListing(S3KeyListing.Builder builder, String keyPrefix) throws IOException {
+    try (Stream<S3Object> objects = S3ParallelLister.list(fileSystem, keyPrefix, true)) {
+      Iterator<S3Object> iterator = objects.iterator();
+      while (iterator.hasNext())
+        builder.add(iterator.next());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private void update(S3KeyListing newListing, long writes) throws IOException {
+    save(newListing);
+    listing = newListing;
+    // A write during the refresh may not be in the new listing
+    stale = writeCount.get() != writes;
+  }
+
+  private S3KeyListing load() throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC)
+        throw new IOException("Not a listing index: " + file);
+      if (in.readInt() != VERSION)
+        throw new IOException("Unsupported listing index version: " + file);
+      if (!in.readUTF().equals(fileSystem.getBucketName()) || !in.readUTF().equals(prefix))
+        return null;
+
+      S3KeyListing.Builder builder = new S3KeyListing.Builder(prefix);
+      final int count = in.readInt();
+      byte[] key = new byte[0];
+      for (int i = 0; i < count; i++) {
+        int shared = in.readUnsignedShort();
+        int suffixLength = in.readUnsignedShort();
+        key = Arrays.copyOf(key, shared + suffixLength);
+        in.readFully(key, shared, suffixLength);
+        long size = in.readLong();
+        long lastModified = in.readLong();
+        String eTag = in.readBoolean() ? in.readUTF() : null;
+        builder.add(new String(key, UTF_8), size, lastModified, eTag);
+      }
+      return builder.build();
+    }
+  }
+
+  private void save(S3KeyListing newListing) throws IOException {
+    if (file == null)
+      return;
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(fileSystem.getBucketName());
+      out.writeUTF(prefix);
+      out.writeInt(newListing.size());
+      byte[] previous = new byte[0];
+      // Iterate, since looking up each key by index decodes its block from the start
+      Iterator<String> keys = newListing.keys(0, newListing.size());
+      for (int i = 0; i < newListing.size(); i++) {
+        byte[] key = keys.next().getBytes(UTF_8);
+        int shared = 0;
+        int limit = Math.min(previous.length, key.length);
+        while (shared < limit && previous[shared] == key[shared])
+          shared = shared + 1;
+        out.writeShort(shared);
+        out.writeShort(key.length - shared);
+        out.write(key, shared, key.length - shared);
+        out.writeLong(newListing.size(i));
+        out.writeLong(newListing.lastModified(i));
+        String eTag = newListing.eTag(i);
+        out.writeBoolean(eTag != null);
+        if (eTag != null)
+          out.writeUTF(eTag);
+        previous = key;
+      }
+    }
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
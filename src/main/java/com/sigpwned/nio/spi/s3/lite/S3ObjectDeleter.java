@@ -0,0 +1,149 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import com.sigpwned.aws.sdk.lite.s3.model.Delete;
+import com.sigpwned.aws.sdk.lite.s3.model.DeleteObjectsRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.DeleteObjectsResponse;
+import com.sigpwned.aws.sdk.lite.s3.model.ObjectIdentifier;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Error;
+
+/**
+ * Collects keys into batches and deletes each batch with a single DeleteObjects request. Keys are
+ * added with {@link #add(String)}, which hands back a full batch once {@link #MAX_BATCH_SIZE} keys
+ * have accumulated so the caller can decide which thread deletes it. Per-key results are reported
+ * to the listener.
+ */
+final class S3ObjectDeleter {
+  /**
+   * The maximum number of keys S3 accepts in one DeleteObjects request
+   */
+  static final int MAX_BATCH_SIZE = 1000;
+
+  private final S3FileSystem fileSystem;
+  private final S3BulkOperationListener listener;
+  private final AtomicLong deletedCount;
+  private final AtomicLong failedCount;
+  private List<String> batch;
+
+  S3ObjectDeleter(S3FileSystem fileSystem, S3BulkOperationListener listener) {
+    this.fileSystem = requireNonNull(fileSystem);
+    this.listener = requireNonNull(listener);
+    this.deletedCount = new AtomicLong(0L);
+    this.failedCount = new AtomicLong(0L);
+    this.batch = new ArrayList<>(MAX_BATCH_SIZE);
+  }
+
+  /**
+   * Adds the given key to the current batch.
+   *
+   * @return the full batch if this key filled it, which the caller must pass to
+   *         {@link #deleteBatch(List)}, or {@code null} otherwise
+   */
+  List<String> add(String key) {
+    requireNonNull(key);
+    synchronized (this) {
+      batch.add(key);
+      if (batch.size() < MAX_BATCH_SIZE)
+        return null;
+      List<String> result = batch;
+      batch = new ArrayList<>(MAX_BATCH_SIZE);
+      return result;
+    }
+  }
+
+  /**
+   * @return the current partial batch, which may be empty
+   */
+  List<String> drain() {
+    synchronized (this) {
+      List<String> result = batch;
+      batch = new ArrayList<>(MAX_BATCH_SIZE);
+      return result;
+    }
+  }
+
+  /**
+   * Deletes the given keys with one DeleteObjects request. Never throws for S3 errors; failures
+   * are counted and reported to the listener instead.
+   */
+  void deleteBatch(List<String> keys) {
+    if (keys.isEmpty())
+      return;
+    if (keys.size() > MAX_BATCH_SIZE)
+      throw new IllegalArgumentException("too many keys for one batch");
+
+    DeleteObjectsResponse response;
+    try {
+      response = fileSystem.getClient()
+          .deleteObjects(DeleteObjectsRequest.builder().bucket(fileSystem.getBucketName())
+              .delete(Delete.builder()
+                  .objects(keys.stream().map(k -> ObjectIdentifier.builder().key(k).build())
+                      .collect(toList()))
+                  .quiet(true).build())
+              .build());
+    } catch (RuntimeException e) {
+      for (String key : keys) {
+        // Some of the keys may have been deleted anyway
+        fileSystem.invalidateKey(key);
+        failedCount.incrementAndGet();
+        listener.onObjectFailed(fileSystem.getPathForKey(key),
+            new IOException("Failed to delete object", e));
+      }
+      return;
+    }
+
+    // In quiet mode, S3 only reports the keys it failed to delete
+    Set<String> failed = new HashSet<>();
+    if (response.hasErrors()) {
+      for (S3Error error : response.errors()) {
+        failed.add(error.key());
+        failedCount.incrementAndGet();
+        listener.onObjectFailed(fileSystem.getPathForKey(error.key()), new IOException(
+            format("Failed to delete object: %s: %s", error.code(), error.message())));
+      }
+    }
+
+    for (String key : keys) {
+      fileSystem.invalidateKey(key);
+      if (!failed.contains(key)) {
+        deletedCount.incrementAndGet();
+        listener.onObjectDeleted(fileSystem.getPathForKey(key));
+      }
+    }
+  }
+
+  long getDeletedCount() {
+    return deletedCount.get();
+  }
+
+  long getFailedCount() {
+    return failedCount.get();
+  }
+}
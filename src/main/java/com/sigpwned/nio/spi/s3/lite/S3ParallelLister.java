@@ -0,0 +1,380 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.util.Collections.emptyList;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import com.sigpwned.aws.sdk.lite.s3.model.CommonPrefix;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Request;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Response;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+import com.sigpwned.nio.spi.s3.lite.util.BoundedExecutor;
+
+/**
+ * Lists every object under a prefix by splitting the keyspace into shards and listing the shards
+ * concurrently. Shard boundaries come from the common prefixes of one delimited probe request, or,
+ * when the prefix is flat, from the alphanumeric characters that most keys start with. Each shard
+ * covers the keys after its lower boundary, using StartAfter, up to and including its upper
+ * boundary.
+ *
+ * <p>
+ * Results can be merged in key order, in which case each shard has its own small queue and the
+ * consumer drains them in turn, or unordered, in which case all shards share one queue and the
+ * consumer takes pages as they arrive. Either way, the queues are bounded, so workers wait for a
+ * slow consumer rather than buffering the whole listing. If the consumer takes nothing for longer
+ * than the idle timeout, e.g., because the stream was abandoned without being closed, the listing
+ * fails and the workers stop, so they never wait forever on the shared executor.
+ */
+final class S3ParallelLister {
+  private static final String PATH_SEPARATOR = S3FileSystemProvider.SEPARATOR;
+
+  /**
+   * Boundaries used to shard flat prefixes, in ascending order
+   */
+  private static final String FLAT_BOUNDARY_CHARS =
+      "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+  /**
+   * The maximum number of shards per worker. More shards balance better, but each costs at least
+   * one request.
+   */
+  private static final int MAX_SHARDS_PER_WORKER = 8;
+
+  /**
+   * The number of pages each shard may buffer ahead of the consumer
+   */
+  private static final int QUEUE_PAGES_PER_SHARD = 2;
+
+  private static final long OFFER_TIMEOUT_MILLIS = 100L;
+
+  /**
+   * The default time a worker waits for the consumer to make room before failing the listing
+   */
+  static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(1L);
+
+  private S3ParallelLister() {}
+
+  /**
+   * Lists every object under the given prefix.
+   *
+   * @param ordered if {@code true}, objects are returned in key order; otherwise, in the order
+   *        shards return them, which is faster when the consumer keeps up
+   * @return the objects. Closing the stream stops any running shard listings. Listing errors are
+   *         thrown from the stream as {@link UncheckedIOException}.
+   */
+  static Stream<S3Object> list(S3FileSystem fileSystem, String prefix, boolean ordered)
+      throws IOException {
+    return list(fileSystem, prefix, ordered, DEFAULT_IDLE_TIMEOUT);
+  }
+
+  /**
+   * Lists every object under the given prefix.
+   *
+   * @param idleTimeout how long a worker waits for the consumer to make room before failing the
+   *        listing
+   * @see #list(S3FileSystem, String, boolean)
+   */
+  static Stream<S3Object> list(S3FileSystem fileSystem, String prefix, boolean ordered,
+      Duration idleTimeout) throws IOException {
+    if (idleTimeout.isNegative() || idleTimeout.isZero())
+      throw new IllegalArgumentException("idleTimeout must be positive");
+
+    final ListObjectsV2Response probe = fileSystem.getClient()
+        .listObjectsV2(ListObjectsV2Request.builder().bucket(fileSystem.getBucketName())
+            .prefix(prefix).delimiter(PATH_SEPARATOR).build());
+
+    final boolean truncated = Boolean.TRUE.equals(probe.isTruncated());
+    final List<String> commonPrefixes =
+        probe.hasCommonPrefixes() ? probe.commonPrefixes().stream().map(CommonPrefix::prefix)
+            .collect(toList()) : emptyList();
+
+    if (!truncated && commonPrefixes.isEmpty()) {
+      // The probe was the whole listing
+      return probe.hasContents() ? probe.contents().stream() : Stream.empty();
+    }
+
+    final S3FileSystemProvider provider = fileSystem.provider();
+    final int parallelism = provider.getBulkOperationParallelism();
+
+    List<String> boundaries;
+    if (commonPrefixes.size() >= 2) {
+      boundaries = sample(commonPrefixes, parallelism * MAX_SHARDS_PER_WORKER);
+    } else if (!truncated) {
+      // One small subdirectory isn't worth sharding
+      boundaries = emptyList();
+    } else {
+      boundaries = new ArrayList<>(FLAT_BOUNDARY_CHARS.length());
+      for (int i = 0; i < FLAT_BOUNDARY_CHARS.length(); i++)
+        boundaries.add(prefix + FLAT_BOUNDARY_CHARS.charAt(i));
+    }
+
+    List<Shard> shards = new ArrayList<>(boundaries.size() + 1);
+    String lower = null;
+    for (String upper : boundaries) {
+      shards.add(new Shard(lower, upper));
+      lower = upper;
+    }
+    shards.add(new Shard(lower, null));
+
+    final Listing listing = new Listing(fileSystem, prefix, shards, ordered, idleTimeout);
+
+    // Shards must start in order, or an ordered consumer could wait on a shard that cannot start
+    // because later shards hold every permit while they wait for the consumer.
+    final BoundedExecutor workers = new BoundedExecutor(provider.getExecutor(), parallelism);
+    try {
+      provider.getExecutor().execute(() -> {
+        try {
+          for (Shard shard : shards) {
+            if (listing.closed)
+              break;
+            workers.execute(() -> listing.run(shard));
+          }
+        } catch (IOException e) {
+          listing.fail(new UncheckedIOException(e));
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      throw new IOException("Failed to start S3 listing", e);
+    }
+
+    final int characteristics = ordered ? Spliterator.ORDERED | Spliterator.NONNULL
+        : Spliterator.NONNULL;
+    return StreamSupport
+        .stream(Spliterators.spliteratorUnknownSize(listing, characteristics), false)
+        .onClose(listing::close);
+  }
+
+  /**
+   * Picks at most {@code count} evenly spaced elements from the given sorted list
+   */
+  private static List<String> sample(List<String> xs, int count) {
+    if (xs.size() <= count)
+      return xs;
+    List<String> result = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++)
+      result.add(xs.get((int) ((long) i * xs.size() / (count + 1))));
+    return result;
+  }
+
+  /**
+   * Keys after {@code lower}, if given, up to and including {@code upper}, if given
+   */
+  private static final class Shard {
+    final String lower;
+    final String upper;
+    BlockingQueue<Page> queue;
+
+    Shard(String lower, String upper) {
+      this.lower = lower;
+      this.upper = upper;
+    }
+  }
+
+  private static final class Page {
+    static final Page LAST = new Page(emptyList(), null);
+
+    final List<S3Object> objects;
+    final RuntimeException problem;
+
+    Page(List<S3Object> objects, RuntimeException problem) {
+      this.objects = objects;
+      this.problem = problem;
+    }
+  }
+
+  private static final class Listing implements Iterator<S3Object> {
+    private final S3FileSystem fileSystem;
+    private final String prefix;
+    private final List<Shard> shards;
+    private final boolean ordered;
+    private final long idleTimeoutNanos;
+    private volatile boolean closed;
+    private volatile RuntimeException problem;
+
+    /**
+     * The shard the consumer is reading, if ordered, or the number of finished shards otherwise
+     */
+    private int shard;
+    private Iterator<S3Object> page;
+
+    Listing(S3FileSystem fileSystem, String prefix, List<Shard> shards, boolean ordered,
+        Duration idleTimeout) {
+      this.fileSystem = requireNonNull(fileSystem);
+      this.prefix = requireNonNull(prefix);
+      this.shards = requireNonNull(shards);
+      this.ordered = ordered;
+      this.idleTimeoutNanos = idleTimeout.toNanos();
+      if (ordered) {
+        for (Shard s : shards)
+          s.queue = new ArrayBlockingQueue<>(QUEUE_PAGES_PER_SHARD);
+      } else {
+        BlockingQueue<Page> queue =
+            new ArrayBlockingQueue<>(QUEUE_PAGES_PER_SHARD * shards.size());
+        for (Shard s : shards)
+          s.queue = queue;
+      }
+      this.shard = 0;
+      this.page = null;
+    }
+
+    void run(Shard shard) {
+      try {
+        ListObjectsV2Request request = shard.lower != null
+            ? ListObjectsV2Request.builder().bucket(fileSystem.getBucketName()).prefix(prefix)
+                .startAfter(shard.lower).build()
+            : ListObjectsV2Request.builder().bucket(fileSystem.getBucketName()).prefix(prefix)
+                .build();
+        try (Stream<ListObjectsV2Response> responses =
+            fileSystem.getClient().listObjectsV2Paginator(request).stream()) {
+          Iterator<ListObjectsV2Response> iterator = responses.iterator();
+          while (!closed && iterator.hasNext()) {
+            ListObjectsV2Response response = iterator.next();
+            List<S3Object> objects = response.hasContents() ? response.contents() : emptyList();
+
+            boolean done = false;
+            if (shard.upper != null) {
+              int end = 0;
+              // S3 lists keys in UTF-8 order, which String.compareTo does not match
+              while (end < objects.size()
+                  && S3KeyListing.compareKeys(objects.get(end).key(), shard.upper) <= 0)
+                end = end + 1;
+              if (end < objects.size()) {
+                objects = objects.subList(0, end);
+                done = true;
+              }
+            }
+
+            if (!objects.isEmpty())
+              put(shard, new Page(objects, null));
+
+            if (done)
+              break;
+          }
+        }
+        put(shard, Page.LAST);
+      } catch (InterruptedIOException e) {
+        // The shard can't finish, so fail the whole listing. The consumer checks for this while it
+        // waits, so it does not wait forever for the shard's last page.
+        fail(new UncheckedIOException(e));
+      } catch (RuntimeException e) {
+        try {
+          put(shard, new Page(emptyList(), e));
+        } catch (InterruptedIOException e2) {
+          fail(e);
+        }
+      }
+    }
+
+    /**
+     * Queues the given page. If the consumer takes nothing for the idle timeout, fails and closes
+     * the listing instead, so that every worker stops.
+     */
+    private void put(Shard shard, Page page) throws InterruptedIOException {
+      final long start = System.nanoTime();
+      try {
+        while (!closed) {
+          if (shard.queue.offer(page, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+            return;
+          if (System.nanoTime() - start >= idleTimeoutNanos) {
+            fail(new UncheckedIOException(
+                new IOException("Listing abandoned, since the consumer stopped taking objects")));
+            close();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+
+    /**
+     * Fails the listing, which the consumer throws the next time it waits for a page
+     */
+    void fail(RuntimeException e) {
+      if (problem == null)
+        problem = e;
+    }
+
+    void close() {
+      closed = true;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (page == null || !page.hasNext()) {
+        if (shard >= shards.size())
+          return false;
+
+        Page next;
+        try {
+          next = take(shards.get(ordered ? shard : 0).queue);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new UncheckedIOException(new InterruptedIOException());
+        }
+
+        if (next.problem != null)
+          throw new UncheckedIOException(new IOException("Failed to list objects", next.problem));
+
+        if (next == Page.LAST) {
+          shard = shard + 1;
+          page = null;
+        } else {
+          page = next.objects.iterator();
+        }
+      }
+      return true;
+    }
+
+    private Page take(BlockingQueue<Page> queue) throws InterruptedException {
+      while (true) {
+        if (problem != null)
+          throw problem;
+        Page result = queue.poll(OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (result != null)
+          return result;
+      }
+    }
+
+    @Override
+    public S3Object next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      return page.next();
+    }
+  }
+}
@@ -29,10 +29,12 @@ import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.util.Objects.requireNonNull;
 import java.io.File;
 import java.io.IOError;
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.FileSystem;
 import java.nio.file.InvalidPathException;
 import java.nio.file.LinkOption;
+import java.nio.file.NotDirectoryException;
 import java.nio.file.Path;
 import java.nio.file.ProviderMismatchException;
 import java.nio.file.WatchEvent;
@@ -41,7 +43,7 @@ import java.nio.file.WatchService;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import com.sigpwned.nio.spi.s3.lite.util.MorePaths;
 import com.sigpwned.nio.spi.s3.lite.util.UrlEncoding;
@@ -52,19 +54,79 @@ import com.sigpwned.nio.spi.s3.lite.util.UrlEncoding;
 public class S3Path implements Path {
   private static final String PATH_SEPARATOR = S3FileSystemProvider.SEPARATOR;
 
+  /**
+   * A first element that {@link #getPath} would take for a scheme
+   */
+  private static final String SCHEME_ELEMENT = S3FileSystemProvider.SCHEME + ":";
+
   private final S3FileSystem fileSystem;
   private final PosixLikePathRepresentation pathRepresentation;
 
+  /**
+   * The attributes of the object at this path as of when it was listed, if this path came from a
+   * listing, and the file system's write generation at the time. Not part of the path's identity.
+   */
+  private final S3BasicFileAttributes listedAttributes;
+  private final long listedGeneration;
+
+  /**
+   * Derived values, computed on first use. Paths are immutable, so a thread that sees null just
+   * computes the same value again.
+   */
+  private S3Path realPath;
+  private String key;
+  private int hash;
+
+  /**
+   * Volatile, unlike the others, since URI has non-final fields and so is not safe to publish
+   * through a data race
+   */
+  private volatile URI uri;
+
   private S3Path(S3FileSystem fileSystem, PosixLikePathRepresentation pathRepresentation) {
+    this(fileSystem, pathRepresentation, null, 0L);
+  }
+
+  private S3Path(S3FileSystem fileSystem, PosixLikePathRepresentation pathRepresentation,
+      S3BasicFileAttributes listedAttributes, long listedGeneration) {
     this.fileSystem = fileSystem;
     this.pathRepresentation = pathRepresentation;
+    this.listedAttributes = listedAttributes;
+    this.listedGeneration = listedGeneration;
+  }
+
+  /**
+   * Returns a copy of this path that carries the given attributes, which were read from a listing.
+   * Reading attributes from the returned path answers from these attributes instead of making a
+   * request. Paths derived from the returned path do not carry them. The attributes are only used
+   * until this file system next changes an object, since the change may have been to this one.
+   * They are not refreshed for changes made by anyone else.
+   */
+  /* default */ S3Path withListedAttributes(S3BasicFileAttributes attributes) {
+    S3Path result = new S3Path(fileSystem, pathRepresentation, requireNonNull(attributes),
+        fileSystem.getWriteGeneration());
+    result.realPath = realPath;
+    result.key = key;
+    result.hash = hash;
+    result.uri = uri;
+    return result;
+  }
+
+  /**
+   * @return the attributes this path carries from a listing, or {@code null} if none, or if this
+   *         file system has changed an object since the listing
+   */
+  /* default */ S3BasicFileAttributes listedAttributes() {
+    if (listedAttributes == null || fileSystem.getWriteGeneration() != listedGeneration)
+      return null;
+    return listedAttributes;
   }
 
   /**
    * Construct a path using the same filesystem (bucket) as this path
    */
   private S3Path from(String path) {
-    return getPath(this.fileSystem, path);
+    return getCanonicalPath(this.fileSystem, path);
   }
 
   /**
@@ -119,6 +181,32 @@ public class S3Path implements Path {
     return new S3Path(fsForBucket, PosixLikePathRepresentation.of(first, more));
   }
 
+  /**
+   * Constructs a path from a string that is already in the form {@link #getPath} produces, like a
+   * key from a listing, without parsing it. Strings that {@code getPath} would change, e.g., those
+   * with repeated separators or surrounding whitespace, fall back to {@code getPath}, so the result
+   * is always the same.
+   */
+  static S3Path getCanonicalPath(S3FileSystem fsForBucket, String path) {
+    if (!isCanonical(path) || path.startsWith(fsForBucket.provider().getScheme() + ":/"))
+      return getPath(fsForBucket, path);
+    return new S3Path(fsForBucket, new PosixLikePathRepresentation(path));
+  }
+
+  /**
+   * Returns {@code true} if {@link PosixLikePathRepresentation#of} would return the given string
+   * unchanged, other than a leading scheme
+   */
+  private static boolean isCanonical(String path) {
+    final int length = path.length();
+    if (length == 0 || path.charAt(0) <= ' ' || path.charAt(length - 1) <= ' ')
+      return false;
+    for (int i = 1; i < length; i++)
+      if (path.charAt(i) == '/' && path.charAt(i - 1) == '/')
+        return false;
+    return true;
+  }
+
   /**
    * Returns the file system that created this object.
    *
@@ -162,16 +250,15 @@ public class S3Path implements Path {
    */
   @Override
   public S3Path getFileName() {
-    final List<String> elements = pathRepresentation.elements();
-    int size = elements.size();
+    int size = pathRepresentation.elementCount();
     if (size == 0) {
       return null;
     }
 
     if (pathRepresentation.hasTrailingSeparator()) {
-      return from(elements.get(size - 1) + PATH_SEPARATOR);
+      return from(pathRepresentation.element(size - 1) + PATH_SEPARATOR);
     } else {
-      return from(elements.get(size - 1));
+      return from(pathRepresentation.element(size - 1));
     }
   }
 
@@ -202,7 +289,7 @@ public class S3Path implements Path {
    */
   @Override
   public S3Path getParent() {
-    int size = pathRepresentation.elements().size();
+    int size = pathRepresentation.elementCount();
     if (this.equals(getRoot()) || size < 1) {
       return null;
     }
@@ -220,7 +307,7 @@ public class S3Path implements Path {
    */
   @Override
   public int getNameCount() {
-    return pathRepresentation.elements().size();
+    return pathRepresentation.elementCount();
   }
 
   /**
@@ -238,8 +325,7 @@ public class S3Path implements Path {
    */
   @Override
   public S3Path getName(int index) {
-    final List<String> elements = pathRepresentation.elements();
-    if (index < 0 || index >= elements.size()) {
+    if (index < 0 || index >= pathRepresentation.elementCount()) {
       throw new IllegalArgumentException("index must be >= 0 and <= the number of path elements");
     }
     return subpath(index, index + 1);
@@ -266,7 +352,7 @@ public class S3Path implements Path {
    */
   @Override
   public S3Path subpath(int beginIndex, int endIndex) {
-    final int size = pathRepresentation.elements().size();
+    final int size = pathRepresentation.elementCount();
     if (beginIndex < 0) {
       throw new IllegalArgumentException("begin index may not be < 0");
     }
@@ -280,8 +366,7 @@ public class S3Path implements Path {
       throw new IllegalArgumentException("end index may not be <= the begin index");
     }
 
-    String path =
-        String.join(PATH_SEPARATOR, pathRepresentation.elements().subList(beginIndex, endIndex));
+    String path = pathRepresentation.join(beginIndex, endIndex);
     if (this.isAbsolute() && beginIndex == 0) {
       path = PATH_SEPARATOR + path;
     }
@@ -315,9 +400,35 @@ public class S3Path implements Path {
    */
   @Override
   public boolean startsWith(Path other) {
-    return this.equals(other) || this.fileSystem.equals(other.getFileSystem())
-        && this.isAbsolute() == other.isAbsolute() && this.getNameCount() >= other.getNameCount()
-        && this.subpath(0, other.getNameCount()).equals(other);
+    if (this.equals(other)) {
+      return true;
+    }
+    if (!(other instanceof S3Path) || !this.fileSystem.equals(other.getFileSystem())
+        || this.isAbsolute() != other.isAbsolute()) {
+      return false;
+    }
+
+    final S3Path o = (S3Path) other;
+    final int size = this.getNameCount();
+    final int otherSize = o.getNameCount();
+    if (otherSize > size) {
+      return false;
+    }
+    if (otherSize == 0) {
+      // Every absolute path starts with the root
+      return o.isAbsolute();
+    }
+
+    // The subpath has a trailing separator unless it is the whole of a path without one
+    final boolean trailingSeparator =
+        otherSize < size || pathRepresentation.hasTrailingSeparator();
+    if (this.isInRealForm(0, otherSize, trailingSeparator)
+        && o.isInRealForm(0, otherSize, o.isDirectory())) {
+      return trailingSeparator == o.isDirectory()
+          && sameElements(this.pathRepresentation, 0, o.pathRepresentation, otherSize);
+    }
+
+    return this.subpath(0, otherSize).equals(other);
   }
 
   /**
@@ -357,9 +468,101 @@ public class S3Path implements Path {
    */
   @Override
   public boolean endsWith(Path other) {
-    return this.equals(other) || this.fileSystem == other.getFileSystem()
-        && this.getNameCount() >= other.getNameCount() && this
-            .subpath(this.getNameCount() - other.getNameCount(), this.getNameCount()).equals(other);
+    if (this.equals(other)) {
+      return true;
+    }
+    if (!(other instanceof S3Path) || this.fileSystem != other.getFileSystem()) {
+      return false;
+    }
+
+    final S3Path o = (S3Path) other;
+    final int size = this.getNameCount();
+    final int otherSize = o.getNameCount();
+    if (otherSize > size || otherSize == 0) {
+      return false;
+    }
+
+    final boolean trailingSeparator = pathRepresentation.hasTrailingSeparator();
+    if (this.isInRealForm(size - otherSize, size, trailingSeparator)
+        && o.isInRealForm(0, otherSize, o.isDirectory())) {
+      return trailingSeparator == o.isDirectory()
+          && sameElements(this.pathRepresentation, size - otherSize, o.pathRepresentation,
+              otherSize);
+    }
+
+    return this.subpath(size - otherSize, size).equals(other);
+  }
+
+  /**
+   * Returns {@code true} if the given number of elements of {@code a}, starting at {@code from},
+   * are the same as the first elements of {@code b}
+   */
+  private static boolean sameElements(PosixLikePathRepresentation a, int from,
+      PosixLikePathRepresentation b, int count) {
+    for (int i = 0; i < count; i++) {
+      if (!PosixLikePathRepresentation.elementEquals(a, from + i, b, i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if the real path of a path made of the given elements of this path, with
+   * a trailing separator if the flag is set, would have exactly those elements. That is the case
+   * unless normalizing changes them: an element is "{@code .}" or "{@code ..}", the first element
+   * starts with whitespace or is the scheme, or the last element ends with whitespace and is not
+   * followed by a separator. Paths in real form can be compared element by element, without
+   * creating their real paths.
+   */
+  private boolean isInRealForm(int beginIndex, int endIndex, boolean trailingSeparator) {
+    if (beginIndex == endIndex) {
+      return true;
+    }
+
+    final String path = pathRepresentation.toString();
+    for (int i = beginIndex; i < endIndex; i++) {
+      int start = pathRepresentation.elementStart(i);
+      int length = pathRepresentation.elementEnd(i) - start;
+      if (path.charAt(start) == '.'
+          && (length == 1 || (length == 2 && path.charAt(start + 1) == '.'))) {
+        return false;
+      }
+    }
+
+    final int firstStart = pathRepresentation.elementStart(beginIndex);
+    if (path.charAt(firstStart) <= ' ') {
+      return false;
+    }
+    if (pathRepresentation.elementEnd(beginIndex) - firstStart == SCHEME_ELEMENT.length()
+        && path.startsWith(SCHEME_ELEMENT, firstStart)) {
+      return false;
+    }
+
+    final int lastEnd = pathRepresentation.elementEnd(endIndex - 1);
+    return trailingSeparator || path.charAt(lastEnd - 1) > ' ';
+  }
+
+  /**
+   * The representation of this path's real path, which is this path's own if it is already in
+   * real form
+   */
+  private PosixLikePathRepresentation realRepresentation() {
+    if (isInRealForm(0, getNameCount(), isDirectory())) {
+      return pathRepresentation;
+    }
+    return toRealPath(NOFOLLOW_LINKS).pathRepresentation;
+  }
+
+  /**
+   * Compares the real paths of this path and the given path as strings, without creating them
+   * when the paths are already in real form
+   */
+  private int compareRealPaths(S3Path other) {
+    PosixLikePathRepresentation a = this.realRepresentation();
+    PosixLikePathRepresentation b = other.realRepresentation();
+    return PosixLikePathRepresentation.compareElements(a, a.hasTrailingSeparator(), b,
+        b.hasTrailingSeparator());
   }
 
   /**
@@ -405,10 +608,11 @@ public class S3Path implements Path {
 
     boolean directory = pathRepresentation.isDirectory();
 
-    final List<String> elements = pathRepresentation.elements();
+    final int count = pathRepresentation.elementCount();
     final Deque<String> realElements = new LinkedList<String>();
 
-    for (String element : elements) {
+    for (int i = 0; i < count; i++) {
+      String element = pathRepresentation.element(i);
       if (element.equals(".")) {
         continue;
       }
@@ -653,14 +857,17 @@ public class S3Path implements Path {
    *
    * <pre>
    * {@code
-   * S3Path p = (S3Path)Paths.get("s3://mybucket/with+blank+and+%25"); // -> s3://mybucket/with blank and %
-   * String s = p.toString; // -> /mybucket/with blank and %
-   * URI u = p.toUri(); --> // -> s3://mybucket/with+blank+and+%25
+   * S3Path p = (S3Path)Paths.get(URI.create("s3://mybucket/with%20blank%20and%20%25"));
+   * String s = p.toString; // -> /with blank and %
+   * URI u = p.toUri(); --> // -> s3://mybucket/with%20blank%20and%20%25
    * ...
    * String s = p.getFileSystem().get("with space").toString(); // -> /with space
    * }
    * </pre>
    *
+   * <p>
+   * The URI is computed once and cached.
+   *
    * @return the URI representing this path
    * @throws IOError if an I/O error occurs obtaining the absolute path, or where a file system is
    *         constructed to access the contents of a file as a file system, and the URI of the
@@ -672,27 +879,32 @@ public class S3Path implements Path {
 
   @Override
   public URI toUri() {
-    Path path = toAbsolutePath().toRealPath(NOFOLLOW_LINKS);
-    Iterator<Path> elements = path.iterator();
-
-    StringBuilder uri = new StringBuilder(fileSystem.provider().getScheme() + "://");
-    // String endpoint = fileSystem.configuration().getEndpoint();
-    // if (!endpoint.isEmpty()) {
-    // uri.append(fileSystem.configuration().getEndpoint()).append(PATH_SEPARATOR);
-    // }
-    uri.append(bucketName());
-    elements.forEachRemaining((e) -> {
-      String name = e.getFileName().toString();
-      if (name.endsWith(PATH_SEPARATOR)) {
-        name = name.substring(0, name.length() - 1);
+    URI result = uri;
+    if (result == null) {
+      PosixLikePathRepresentation real = toRealPath(NOFOLLOW_LINKS).pathRepresentation;
+      String realPath = real.toString();
+
+      StringBuilder builder =
+          new StringBuilder(realPath.length() + bucketName().length() + 16);
+      builder.append(fileSystem.provider().getScheme()).append("://");
+      // String endpoint = fileSystem.configuration().getEndpoint();
+      // if (!endpoint.isEmpty()) {
+      // uri.append(fileSystem.configuration().getEndpoint()).append(PATH_SEPARATOR);
+      // }
+      builder.append(bucketName());
+      for (int i = 0; i < real.elementCount(); i++) {
+        builder.append(PATH_SEPARATOR);
+        UrlEncoding.appendEncodedUriPath(builder, realPath, real.elementStart(i),
+            real.elementEnd(i));
+      }
+      if (isDirectory()) {
+        builder.append(PATH_SEPARATOR);
       }
-      uri.append(PATH_SEPARATOR).append(UrlEncoding.urlencode(name));
-    });
-    if (isDirectory()) {
-      uri.append(PATH_SEPARATOR);
-    }
 
-    return URI.create(uri.toString());
+      result = URI.create(builder.toString());
+      this.uri = result;
+    }
+    return result;
   }
 
   /**
@@ -731,12 +943,18 @@ public class S3Path implements Path {
    */
   @Override
   public S3Path toRealPath(LinkOption... options) {
-    S3Path p = this;
-    if (!isAbsolute()) {
-      p = toAbsolutePath();
-    }
+    S3Path result = realPath;
+    if (result == null) {
+      S3Path p = this;
+      if (!isAbsolute()) {
+        p = toAbsolutePath();
+      }
 
-    return S3Path.getPath(fileSystem, PATH_SEPARATOR, p.normalize().toString());
+      result = S3Path.getPath(fileSystem, PATH_SEPARATOR, p.normalize().toString());
+      result.realPath = result;
+      realPath = result;
+    }
+    return result;
   }
 
   /**
@@ -751,27 +969,31 @@ public class S3Path implements Path {
   }
 
   /**
-   * Currently not implemented
+   * Registers this directory with a watch service from {@link S3FileSystem#newWatchService()},
+   * which polls it for changes
    *
-   * @throws UnsupportedOperationException always
+   * @throws ProviderMismatchException if the watch service is not from this file system
+   * @throws NotDirectoryException if this path is not a directory
    */
   @Override
   public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events,
-      WatchEvent.Modifier... modifiers) throws UnsupportedOperationException {
-    throw new UnsupportedOperationException(
-        "This method is not yet supported. Please raise a feature request describing your use case");
+      WatchEvent.Modifier... modifiers) throws IOException {
+    if (!(watcher instanceof S3WatchService))
+      throw new ProviderMismatchException();
+    return ((S3WatchService) watcher).register(this, events, modifiers);
   }
 
   /**
-   * Currently not implemented
+   * Registers this directory with a watch service from {@link S3FileSystem#newWatchService()},
+   * which polls it for changes
    *
-   * @throws UnsupportedOperationException always
+   * @throws ProviderMismatchException if the watch service is not from this file system
+   * @throws NotDirectoryException if this path is not a directory
    */
   @Override
   public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events)
-      throws UnsupportedOperationException {
-    throw new UnsupportedOperationException(
-        "This method is not yet supported. Please raise a feature request describing your use case");
+      throws IOException {
+    return register(watcher, events, new WatchEvent.Modifier[0]);
   }
 
   /**
@@ -787,8 +1009,8 @@ public class S3Path implements Path {
    */
   @Override
   public Iterator<Path> iterator() {
-    return new S3PathIterator(pathRepresentation.elements().iterator(),
-        pathRepresentation.isAbsolute(), pathRepresentation.hasTrailingSeparator());
+    return new S3PathIterator(pathRepresentation.isAbsolute(),
+        pathRepresentation.hasTrailingSeparator());
   }
 
   /**
@@ -812,8 +1034,7 @@ public class S3Path implements Path {
     if (o.fileSystem != this.fileSystem) {
       throw new ClassCastException("compared S3 paths must be from the same bucket");
     }
-    return this.toRealPath(NOFOLLOW_LINKS).toString()
-        .compareTo(o.toRealPath(NOFOLLOW_LINKS).toString());
+    return compareRealPaths(o);
   }
 
   /**
@@ -834,8 +1055,7 @@ public class S3Path implements Path {
 
     return other instanceof S3Path
         && Objects.equals(((S3Path) other).bucketName(), this.bucketName())
-        && Objects.equals(((S3Path) other).toRealPath(NOFOLLOW_LINKS).pathRepresentation,
-            this.toRealPath(NOFOLLOW_LINKS).pathRepresentation);
+        && compareRealPaths((S3Path) other) == 0;
   }
 
   /**
@@ -849,7 +1069,13 @@ public class S3Path implements Path {
    */
   @Override
   public int hashCode() {
-    return this.bucketName().hashCode() + toRealPath(NOFOLLOW_LINKS).pathRepresentation.hashCode();
+    int result = hash;
+    if (result == 0) {
+      result =
+          this.bucketName().hashCode() + toRealPath(NOFOLLOW_LINKS).pathRepresentation.hashCode();
+      hash = result;
+    }
+    return result;
   }
 
   /**
@@ -887,17 +1113,25 @@ public class S3Path implements Path {
    * @return the key
    */
   String getKey() {
+    String result = key;
+    if (result == null) {
+      result = computeKey();
+      key = result;
+    }
+    return result;
+  }
+
+  private String computeKey() {
     if (isEmpty()) {
       return "";
     }
     String s = toRealPath(NOFOLLOW_LINKS).toString();
-    if (s.startsWith(PATH_SEPARATOR + bucketName())) {
-      s = s.replaceFirst(PATH_SEPARATOR + bucketName(), "");
+    String bucketPrefix = PATH_SEPARATOR + bucketName();
+    int start = s.startsWith(bucketPrefix) ? bucketPrefix.length() : 0;
+    while (s.startsWith(PATH_SEPARATOR, start)) {
+      start = start + 1;
     }
-    while (s.startsWith(PATH_SEPARATOR)) {
-      s = s.substring(1);
-    }
-    return s;
+    return s.substring(start);
   }
 
   private final class S3PathIterator implements Iterator<Path> {
@@ -905,19 +1139,21 @@ public class S3Path implements Path {
     final boolean isAbsolute;
     final boolean hasTrailingSeparator;
     boolean first;
-    private final Iterator<String> delegate;
+    private int index;
 
-    private S3PathIterator(Iterator<String> delegate, boolean isAbsolute,
-        boolean hasTrailingSeparator) {
-      this.delegate = delegate;
+    private S3PathIterator(boolean isAbsolute, boolean hasTrailingSeparator) {
       this.isAbsolute = isAbsolute;
       this.hasTrailingSeparator = hasTrailingSeparator;
       first = true;
+      index = 0;
     }
 
     @Override
     public Path next() {
-      String pathString = delegate.next();
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      String pathString = pathRepresentation.element(index++);
       if (isAbsolute() && first) {
         first = false;
         pathString = PATH_SEPARATOR + pathString;
@@ -934,7 +1170,7 @@ public class S3Path implements Path {
 
     @Override
     public boolean hasNext() {
-      return delegate.hasNext();
+      return index < pathRepresentation.elementCount();
     }
   }
 
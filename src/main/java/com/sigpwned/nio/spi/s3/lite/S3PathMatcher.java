@@ -0,0 +1,230 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.util.Objects.requireNonNull;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A {@link PathMatcher} for S3 paths that knows the literal prefix of its pattern, i.e., the text
+ * every matching path must start with. Listings can push that prefix into the ListObjectsV2
+ * {@code prefix} parameter so that S3 only returns keys that could match, and walks can use
+ * {@link #couldMatchBelow(String)} to prune directories that cannot contain a match.
+ *
+ * <p>
+ * Supports the {@code glob} and {@code regex} syntaxes of
+ * {@link java.nio.file.FileSystem#getPathMatcher}. Paths are matched against their string form with
+ * any trailing separator removed, so a directory such as {@code logs/} matches the glob
+ * {@code logs}.
+ */
+final class S3PathMatcher implements PathMatcher {
+  private static final char PATH_SEPARATOR_CHAR = S3FileSystemProvider.SEPARATOR.charAt(0);
+
+  private static final String GLOB_SYNTAX = "glob";
+  private static final String REGEX_SYNTAX = "regex";
+
+  private static final String GLOB_META_CHARS = "\\*?[{";
+  private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}";
+
+  /**
+   * @param syntaxAndPattern a pattern in the form {@code syntax:pattern}
+   * @throws IllegalArgumentException if the parameter is malformed
+   * @throws UnsupportedOperationException if the syntax is not supported
+   * @throws PatternSyntaxException if the pattern is invalid
+   */
+  static S3PathMatcher compile(String syntaxAndPattern) {
+    int colon = syntaxAndPattern.indexOf(':');
+    if (colon <= 0)
+      throw new IllegalArgumentException(syntaxAndPattern);
+    String syntax = syntaxAndPattern.substring(0, colon);
+    String pattern = syntaxAndPattern.substring(colon + 1);
+    if (syntax.equalsIgnoreCase(GLOB_SYNTAX))
+      return new S3PathMatcher(Pattern.compile(globToRegex(pattern)), globLiteralPrefix(pattern));
+    if (syntax.equalsIgnoreCase(REGEX_SYNTAX))
+      return new S3PathMatcher(Pattern.compile(pattern), regexLiteralPrefix(pattern));
+    throw new UnsupportedOperationException("Syntax '" + syntax + "' not recognized");
+  }
+
+  private final Pattern pattern;
+  private final String literalPrefix;
+
+  private S3PathMatcher(Pattern pattern, String literalPrefix) {
+    this.pattern = requireNonNull(pattern);
+    this.literalPrefix = requireNonNull(literalPrefix);
+  }
+
+  @Override
+  public boolean matches(Path path) {
+    return matches(path.toString());
+  }
+
+  /**
+   * Returns {@code true} if the given path string, less any trailing separator, matches
+   */
+  boolean matches(String path) {
+    if (path.length() > 1 && path.charAt(path.length() - 1) == PATH_SEPARATOR_CHAR)
+      path = path.substring(0, path.length() - 1);
+    return pattern.matcher(path).matches();
+  }
+
+  /**
+   * Returns {@code false} if no path that starts with the given directory, which must end with a
+   * separator, can match. A {@code true} result is conservative.
+   */
+  boolean couldMatchBelow(String directory) {
+    Matcher m = pattern.matcher(directory);
+    return m.matches() || m.hitEnd();
+  }
+
+  /**
+   * The text every matching path starts with, which may be empty
+   */
+  String literalPrefix() {
+    return literalPrefix;
+  }
+
+  /**
+   * Translates a glob to a regex, following the rules of the default file system
+   */
+  static String globToRegex(String glob) {
+    StringBuilder result = new StringBuilder("^");
+    boolean inGroup = false;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      switch (c) {
+        case '\\':
+          if (++i == glob.length())
+            throw new PatternSyntaxException("No character to escape", glob, i - 1);
+          appendLiteral(result, glob.charAt(i));
+          break;
+        case '*':
+          if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+            result.append(".*");
+            i = i + 1;
+          } else {
+            result.append("[^/]*");
+          }
+          break;
+        case '?':
+          result.append("[^/]");
+          break;
+        case '[':
+          i = appendBracketExpression(result, glob, i);
+          break;
+        case '{':
+          if (inGroup)
+            throw new PatternSyntaxException("Cannot nest groups", glob, i);
+          result.append("(?:(?:");
+          inGroup = true;
+          break;
+        case '}':
+          if (inGroup) {
+            result.append("))");
+            inGroup = false;
+          } else {
+            appendLiteral(result, c);
+          }
+          break;
+        case ',':
+          if (inGroup)
+            result.append(")|(?:");
+          else
+            appendLiteral(result, c);
+          break;
+        default:
+          appendLiteral(result, c);
+      }
+    }
+    if (inGroup)
+      throw new PatternSyntaxException("Missing '}'", glob, glob.length() - 1);
+    return result.append('$').toString();
+  }
+
+  /**
+   * Appends the bracket expression starting at {@code start} and returns the index of its closing
+   * bracket
+   */
+  private static int appendBracketExpression(StringBuilder result, String glob, int start) {
+    result.append("[[^/]&&[");
+    int i = start + 1;
+    if (i < glob.length() && glob.charAt(i) == '!') {
+      result.append('^');
+      i = i + 1;
+    }
+    for (; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == ']') {
+        result.append("]]");
+        return i;
+      }
+      if (c == PATH_SEPARATOR_CHAR)
+        throw new PatternSyntaxException("Explicit 'name separator' in class", glob, i);
+      if (c == '\\' || c == '[' || c == '&' || c == '^')
+        result.append('\\');
+      result.append(c);
+    }
+    throw new PatternSyntaxException("Missing ']'", glob, glob.length() - 1);
+  }
+
+  private static void appendLiteral(StringBuilder result, char c) {
+    if (REGEX_META_CHARS.indexOf(c) != -1)
+      result.append('\\');
+    result.append(c);
+  }
+
+  /**
+   * Returns the text before the first glob metacharacter, with escapes resolved
+   */
+  static String globLiteralPrefix(String glob) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '\\' && i + 1 < glob.length()) {
+        i = i + 1;
+        result.append(glob.charAt(i));
+      } else if (GLOB_META_CHARS.indexOf(c) != -1) {
+        break;
+      } else {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Returns the literal text at the start of the regex. This is conservative: any alternation
+   * gives an empty prefix, and a literal followed by a quantifier is dropped.
+   */
+  static String regexLiteralPrefix(String regex) {
+    if (regex.indexOf('|') != -1)
+      return "";
+    int start = regex.startsWith("^") ? 1 : 0;
+    int end = start;
+    while (end < regex.length() && REGEX_META_CHARS.indexOf(regex.charAt(end)) == -1)
+      end = end + 1;
+    if (end < regex.length() && "?*{".indexOf(regex.charAt(end)) != -1)
+      end = Math.max(start, end - 1);
+    return regex.substring(start, end);
+  }
+}
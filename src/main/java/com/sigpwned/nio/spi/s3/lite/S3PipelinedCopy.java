@@ -0,0 +1,217 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.lang.String.format;
+import static java.util.Collections.emptyMap;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import com.sigpwned.aws.sdk.lite.core.io.RequestBody;
+import com.sigpwned.aws.sdk.lite.s3.exception.NoSuchKeyException;
+import com.sigpwned.aws.sdk.lite.s3.model.AbortMultipartUploadRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.CompleteMultipartUploadRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.CompletedMultipartUpload;
+import com.sigpwned.aws.sdk.lite.s3.model.CompletedPart;
+import com.sigpwned.aws.sdk.lite.s3.model.CreateMultipartUploadRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.GetObjectRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectResponse;
+import com.sigpwned.aws.sdk.lite.s3.model.PutObjectRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.UploadPartRequest;
+import com.sigpwned.nio.spi.s3.lite.util.BoundedExecutor;
+import com.sigpwned.nio.spi.s3.lite.util.BufferPool;
+
+/**
+ * Copies an object between two clients that cannot use a server-side copy, e.g., buckets in
+ * different regions or on different endpoints. The target gets the source's content type and user
+ * metadata, as it would from a server-side copy. The object is split into parts, and each part is
+ * fetched with a ranged GET and sent with an UploadPart, several parts at a time. Part data passes
+ * through the provider's shared {@link BufferPool}, which caps the number of parts all pipelined
+ * copies hold at once. Parts are {@link #PART_SIZE} long, and the pool keeps buffers of that size
+ * for reuse, unless the object is too large to fit in the maximum part count. Then each part's
+ * buffer is as large as the part, and the pool drops it once the part is sent.
+ */
+final class S3PipelinedCopy {
+  /**
+   * The default part size, and the size of the shared buffers
+   */
+  static final int PART_SIZE = 8 * 1024 * 1024;
+
+  /**
+   * The maximum number of parts S3 allows in one multipart upload
+   */
+  private static final int MAX_PART_COUNT = 10000;
+
+  private S3PipelinedCopy() {}
+
+  /**
+   * Copies the object at {@code source} to {@code target}, replacing the target if it exists. The
+   * source is pinned to the ETag it had when the copy started, so a concurrent overwrite fails the
+   * copy instead of producing a mix of old and new content.
+   *
+   * @throws NoSuchFileException if the source does not exist
+   */
+  static void copy(S3Path source, S3Path target) throws IOException {
+    final S3FileSystemProvider provider = source.getFileSystem().provider();
+    final BufferPool buffers = provider.getCopyBufferPool();
+
+    final HeadObjectResponse head;
+    try {
+      head = source.getFileSystem().getClient().headObject(
+          HeadObjectRequest.builder().bucket(source.bucketName()).key(source.getKey()).build());
+    } catch (NoSuchKeyException e) {
+      throw new NoSuchFileException(source.toString());
+    }
+
+    final long size = head.contentLength().longValue();
+    final String eTag = head.eTag();
+
+    if (size <= PART_SIZE) {
+      copySinglePart(source, target, head, buffers);
+      return;
+    }
+
+    final int partSize = partSizeFor(size, PART_SIZE);
+    final int partCount = (int) ((size + partSize - 1) / partSize);
+
+    final String uploadId = target.getFileSystem().getClient()
+        .createMultipartUpload(CreateMultipartUploadRequest.builder().bucket(target.bucketName())
+            .key(target.getKey()).contentType(head.contentType()).metadata(metadataOf(head))
+            .build())
+        .uploadId();
+
+    boolean completed = false;
+    try {
+      final String[] eTags = new String[partCount];
+      final AtomicReference<IOException> problem = new AtomicReference<>();
+      final BoundedExecutor workers = new BoundedExecutor(provider.getExecutor(),
+          Math.min(buffers.getCapacity(), provider.getBulkOperationParallelism()));
+
+      for (int i = 0; i < partCount && problem.get() == null; i++) {
+        final int partNumber = i + 1;
+        final long offset = (long) i * partSize;
+        final int length = (int) Math.min(partSize, size - offset);
+        workers.execute(() -> {
+          try {
+            byte[] buffer = buffers.acquire(partSize);
+            try {
+              readRange(source, offset, length, eTag, buffer);
+              eTags[partNumber - 1] = target.getFileSystem().getClient()
+                  .uploadPart(
+                      UploadPartRequest.builder().bucket(target.bucketName())
+                          .key(target.getKey()).uploadId(uploadId).partNumber(partNumber)
+                          .contentLength((long) length).build(),
+                      new RequestBody((long) length, null,
+                          () -> new ByteArrayInputStream(buffer, 0, length)))
+                  .eTag();
+            } finally {
+              buffers.release(buffer);
+            }
+          } catch (IOException | RuntimeException e) {
+            problem.compareAndSet(null, S3BulkOperations.toIOException(e));
+          }
+        });
+      }
+
+      workers.await();
+
+      if (problem.get() != null)
+        throw problem.get();
+
+      List<CompletedPart> parts = new ArrayList<>(partCount);
+      for (int i = 0; i < partCount; i++)
+        parts.add(CompletedPart.builder().partNumber(i + 1).eTag(eTags[i]).build());
+
+      target.getFileSystem().getClient()
+          .completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+              .bucket(target.bucketName()).key(target.getKey()).uploadId(uploadId)
+              .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()).build());
+
+      completed = true;
+    } finally {
+      if (!completed) {
+        try {
+          target.getFileSystem().getClient()
+              .abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                  .bucket(target.bucketName()).key(target.getKey()).uploadId(uploadId).build());
+        } catch (RuntimeException e) {
+          // We're already failing. Leave the upload for the bucket's lifecycle rules.
+        }
+      }
+    }
+  }
+
+  private static void copySinglePart(S3Path source, S3Path target, HeadObjectResponse head,
+      BufferPool buffers) throws IOException {
+    final int size = head.contentLength().intValue();
+    byte[] buffer = buffers.acquire(size);
+    try {
+      if (size != 0)
+        readRange(source, 0L, size, head.eTag(), buffer);
+      target.getFileSystem().getClient().putObject(
+          PutObjectRequest.builder().bucket(target.bucketName()).key(target.getKey())
+              .metadata(metadataOf(head)).build(),
+          new RequestBody((long) size, head.contentType(),
+              () -> new ByteArrayInputStream(buffer, 0, size)));
+    } finally {
+      buffers.release(buffer);
+    }
+  }
+
+  private static void readRange(S3Path source, long offset, int length, String eTag,
+      byte[] buffer) throws IOException {
+    try (InputStream in = source.getFileSystem().getClient()
+        .getObject(GetObjectRequest.builder().bucket(source.bucketName()).key(source.getKey())
+            .range(format("bytes=%d-%d", offset, offset + length - 1)).ifMatch(eTag).build())) {
+      int total = 0;
+      while (total < length) {
+        int n = in.read(buffer, total, length - total);
+        if (n == -1)
+          throw new EOFException(format("Object %s ended early", source));
+        total = total + n;
+      }
+    }
+  }
+
+  /**
+   * Returns the source object's user metadata, which a server-side copy would carry over
+   */
+  private static Map<String, String> metadataOf(HeadObjectResponse head) {
+    return head.hasMetadata() ? head.metadata() : emptyMap();
+  }
+
+  /**
+   * Uses the given default part size unless the object is too large to fit in the maximum part
+   * count.
+   */
+  /* default */ static int partSizeFor(long size, int defaultPartSize) {
+    long minimumPartSize = (size + MAX_PART_COUNT - 1) / MAX_PART_COUNT;
+    if (minimumPartSize > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("object too large to copy");
+    return (int) Math.max(defaultPartSize, minimumPartSize);
+  }
+}
@@ -0,0 +1,503 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.util.Collections.emptyList;
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.Watchable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import com.sigpwned.aws.sdk.lite.s3.model.CommonPrefix;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Request;
+import com.sigpwned.aws.sdk.lite.s3.model.ListObjectsV2Response;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
+import com.sigpwned.nio.spi.s3.lite.options.S3WatchEventModifier;
+
+/**
+ * A watch service that polls. S3 has no change notifications that a client can subscribe to
+ * without setting up other AWS services, so each registered directory is listed on a fixed
+ * interval, and the listing is compared with the one before it. Listings are kept as
+ * {@link S3KeyListing} snapshots, which take tens of bytes per entry, and are compared in one
+ * merge pass. An entry is modified if its ETag or modification time changed. Subdirectories are
+ * entries too, and are created when their first object appears and deleted when their last object
+ * disappears.
+ *
+ * <p>
+ * Directories registered with {@link S3WatchEventModifier#APPEND_ONLY} are polled with StartAfter
+ * from the last known key instead of being listed in full, and only that key is kept between
+ * polls.
+ *
+ * <p>
+ * Each watch service polls on its own daemon thread, which stops when the service is closed.
+ * Failed polls are retried on the next interval.
+ */
+final class S3WatchService implements WatchService {
+  private static final char PATH_SEPARATOR_CHAR = S3FileSystemProvider.SEPARATOR.charAt(0);
+
+  /**
+   * The maximum number of events a key holds before it reports an overflow instead
+   */
+  private static final int MAX_EVENT_LIST_SIZE = 512;
+
+  /**
+   * Returned by take and poll to wake waiting consumers when the service closes
+   */
+  private static final WatchKey CLOSE_KEY = new WatchKey() {
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+
+    @Override
+    public List<WatchEvent<?>> pollEvents() {
+      return emptyList();
+    }
+
+    @Override
+    public boolean reset() {
+      return true;
+    }
+
+    @Override
+    public void cancel() {}
+
+    @Override
+    public Watchable watchable() {
+      return null;
+    }
+  };
+
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger(1);
+
+  private final S3FileSystem fileSystem;
+  private final List<Key> keys;
+  private final LinkedBlockingDeque<WatchKey> signalled;
+  private final ScheduledExecutorService scheduler;
+  private volatile boolean closed;
+
+  S3WatchService(S3FileSystem fileSystem, Duration pollInterval) throws IOException {
+    if (pollInterval.isNegative() || pollInterval.isZero())
+      throw new IllegalArgumentException("pollInterval must be positive");
+    this.fileSystem = requireNonNull(fileSystem);
+    this.keys = new CopyOnWriteArrayList<>();
+    this.signalled = new LinkedBlockingDeque<>();
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        // Don't keep the JVM alive for a watch service nobody closed
+        Thread result = new Thread(runnable, "s3-watch-service-" + THREAD_COUNT.getAndIncrement());
+        result.setDaemon(true);
+        return result;
+      }
+    });
+    this.closed = false;
+    try {
+      scheduler.scheduleWithFixedDelay(this::pollKeys, pollInterval.toMillis(),
+          pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      scheduler.shutdown();
+      throw new IOException("Failed to start watch service", e);
+    }
+    fileSystem.registerCloseable(this);
+  }
+
+  /**
+   * Registers the given directory, or updates its registration, and takes the snapshot that the
+   * first poll is compared with
+   *
+   * @throws ProviderMismatchException if the directory belongs to another file system
+   * @throws NotDirectoryException if the path is not a directory
+   * @throws UnsupportedOperationException if an event kind or modifier is not supported
+   */
+  WatchKey register(S3Path directory, WatchEvent.Kind<?>[] events,
+      WatchEvent.Modifier... modifiers) throws IOException {
+    if (closed)
+      throw new ClosedWatchServiceException();
+    if (directory.getFileSystem() != fileSystem)
+      throw new ProviderMismatchException();
+    if (!directory.isDirectory())
+      throw new NotDirectoryException(directory.toString());
+
+    Set<WatchEvent.Kind<?>> kinds = new HashSet<>();
+    for (WatchEvent.Kind<?> event : events) {
+      if (event == StandardWatchEventKinds.ENTRY_CREATE
+          || event == StandardWatchEventKinds.ENTRY_MODIFY
+          || event == StandardWatchEventKinds.ENTRY_DELETE)
+        kinds.add(event);
+      else if (event != StandardWatchEventKinds.OVERFLOW)
+        throw new UnsupportedOperationException("Unsupported event kind " + event.name());
+    }
+    if (kinds.isEmpty())
+      throw new IllegalArgumentException("No events to register");
+
+    boolean appendOnly = false;
+    for (WatchEvent.Modifier modifier : modifiers) {
+      if (modifier == S3WatchEventModifier.APPEND_ONLY)
+        appendOnly = true;
+      else
+        throw new UnsupportedOperationException("Unsupported modifier " + modifier.name());
+    }
+
+    String prefix = S3BulkOperations.directoryKey(directory.toAbsolutePath());
+    synchronized (keys) {
+      for (Key key : keys) {
+        if (key.prefix.equals(prefix)) {
+          key.kinds = kinds;
+          key.rebase(appendOnly, false);
+          return key;
+        }
+      }
+      Key result = new Key(directory, prefix, kinds);
+      result.rebase(appendOnly, true);
+      keys.add(result);
+      return result;
+    }
+  }
+
+  @Override
+  public WatchKey poll() {
+    checkOpen();
+    return checkKey(signalled.poll());
+  }
+
+  @Override
+  public WatchKey poll(long timeout, TimeUnit unit) throws InterruptedException {
+    checkOpen();
+    return checkKey(signalled.poll(timeout, unit));
+  }
+
+  @Override
+  public WatchKey take() throws InterruptedException {
+    checkOpen();
+    return checkKey(signalled.take());
+  }
+
+  private void checkOpen() {
+    if (closed)
+      throw new ClosedWatchServiceException();
+  }
+
+  private WatchKey checkKey(WatchKey key) {
+    if (key == CLOSE_KEY) {
+      // Wake the next waiting consumer, too
+      signalled.offer(CLOSE_KEY);
+      throw new ClosedWatchServiceException();
+    }
+    return key;
+  }
+
+  @Override
+  public void close() {
+    if (closed)
+      return;
+    closed = true;
+    for (Key key : keys)
+      key.cancel();
+    signalled.clear();
+    signalled.offer(CLOSE_KEY);
+    scheduler.shutdownNow();
+    fileSystem.deregisterCloseable(this);
+  }
+
+  private void pollKeys() {
+    for (Key key : keys) {
+      if (closed)
+        return;
+      try {
+        key.poll();
+      } catch (IOException | RuntimeException e) {
+        // S3 may be briefly unavailable. Try again next time.
+      }
+    }
+  }
+
+  /**
+   * Lists the entries of the directory with the given key, i.e., the objects directly inside it
+   * and its subdirectories, which are stored with their trailing separator and no ETag.
+   *
+   * @param startAfter if not null, only keys after this key are listed
+   */
+  private S3KeyListing list(String prefix, String startAfter) throws IOException {
+    S3KeyListing.Builder result = new S3KeyListing.Builder(prefix);
+
+    ListObjectsV2Request.Builder request = ListObjectsV2Request.builder()
+        .bucket(fileSystem.getBucketName()).prefix(prefix)
+        .delimiter(S3FileSystemProvider.SEPARATOR);
+    if (startAfter != null)
+      request = request.startAfter(startAfter);
+
+    try (Stream<ListObjectsV2Response> responses =
+        fileSystem.getClient().listObjectsV2Paginator(request.build()).stream()) {
+      Iterator<ListObjectsV2Response> iterator = responses.iterator();
+      while (iterator.hasNext()) {
+        ListObjectsV2Response response = iterator.next();
+        List<S3Object> objects = response.hasContents() ? response.contents() : emptyList();
+        List<CommonPrefix> subdirectories =
+            response.hasCommonPrefixes() ? response.commonPrefixes() : emptyList();
+
+        // Each page's objects and subdirectories are sorted separately, so merge them
+        int i = 0;
+        int j = 0;
+        while (i < objects.size() || j < subdirectories.size()) {
+          boolean object = j == subdirectories.size() || (i < objects.size() && S3KeyListing
+              .compareKeys(objects.get(i).key(), subdirectories.get(j).prefix()) < 0);
+          String key = object ? objects.get(i++).key() : subdirectories.get(j++).prefix();
+
+          // Skip the directory marker, and, with StartAfter, the subdirectory that holds it
+          if (key.equals(prefix) || (startAfter != null
+              && S3KeyListing.compareKeys(key, startAfter) <= 0))
+            continue;
+
+          if (object)
+            result.add(objects.get(i - 1));
+          else
+            result.add(key, 0L, 0L, null);
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    return result.build();
+  }
+
+  private static final class Event<T> implements WatchEvent<T> {
+    private final WatchEvent.Kind<T> kind;
+    private final T context;
+    private int count;
+
+    Event(WatchEvent.Kind<T> kind, T context) {
+      this.kind = kind;
+      this.context = context;
+      this.count = 1;
+    }
+
+    @Override
+    public WatchEvent.Kind<T> kind() {
+      return kind;
+    }
+
+    @Override
+    public int count() {
+      return count;
+    }
+
+    @Override
+    public T context() {
+      return context;
+    }
+
+    @Override
+    public String toString() {
+      return "Event [kind=" + kind.name() + ", count=" + count + ", context=" + context + "]";
+    }
+  }
+
+  private final class Key implements WatchKey {
+    private final S3Path directory;
+    private final String prefix;
+    private volatile Set<WatchEvent.Kind<?>> kinds;
+    private volatile boolean valid;
+
+    /**
+     * Held while polling or rebasing, so a registration never races with a poll
+     */
+    private final Object pollLock;
+
+    /**
+     * Guarded by pollLock. In append-only mode, only the last key is kept, and it is null while
+     * the directory is empty. Otherwise, only the snapshot is kept.
+     */
+    private boolean appendOnly;
+    private S3KeyListing snapshot;
+    private String lastKey;
+
+    /**
+     * Guarded by this
+     */
+    private List<WatchEvent<?>> events;
+    private boolean signalled;
+
+    Key(S3Path directory, String prefix, Set<WatchEvent.Kind<?>> kinds) {
+      this.directory = directory;
+      this.prefix = prefix;
+      this.kinds = kinds;
+      this.pollLock = new Object();
+      this.valid = true;
+      this.events = new ArrayList<>();
+      this.signalled = false;
+    }
+
+    /**
+     * Takes the listing that the next poll is compared with, unless the key is already in the given
+     * mode and force is false
+     */
+    void rebase(boolean appendOnly, boolean force) throws IOException {
+      synchronized (pollLock) {
+        if (!force && this.appendOnly == appendOnly)
+          return;
+        S3KeyListing listing = list(prefix, null);
+        this.appendOnly = appendOnly;
+        if (appendOnly) {
+          this.snapshot = null;
+          this.lastKey = listing.size() != 0 ? listing.key(listing.size() - 1) : null;
+        } else {
+          this.snapshot = listing;
+          this.lastKey = null;
+        }
+      }
+    }
+
+    void poll() throws IOException {
+      if (!valid)
+        return;
+
+      synchronized (pollLock) {
+        if (appendOnly)
+          pollAppended();
+        else
+          pollAll();
+      }
+    }
+
+    private void pollAppended() throws IOException {
+      final S3KeyListing added = list(prefix, lastKey);
+      Iterator<String> addedKeys = added.keys(0, added.size());
+      while (addedKeys.hasNext())
+        signal(StandardWatchEventKinds.ENTRY_CREATE, addedKeys.next());
+      if (added.size() != 0)
+        lastKey = added.key(added.size() - 1);
+    }
+
+    private void pollAll() throws IOException {
+      final S3KeyListing previous = snapshot;
+      final S3KeyListing current = list(prefix, null);
+      Iterator<String> previousKeys = previous.keys(0, previous.size());
+      Iterator<String> currentKeys = current.keys(0, current.size());
+      String previousKey = previousKeys.hasNext() ? previousKeys.next() : null;
+      String currentKey = currentKeys.hasNext() ? currentKeys.next() : null;
+      int i = 0;
+      int j = 0;
+      while (previousKey != null || currentKey != null) {
+        int comparison = previousKey == null ? 1
+            : currentKey == null ? -1 : S3KeyListing.compareKeys(previousKey, currentKey);
+        if (comparison < 0) {
+          signal(StandardWatchEventKinds.ENTRY_DELETE, previousKey);
+        } else if (comparison > 0) {
+          signal(StandardWatchEventKinds.ENTRY_CREATE, currentKey);
+        } else if (!previous.sameVersion(i, current, j)) {
+          signal(StandardWatchEventKinds.ENTRY_MODIFY, currentKey);
+        }
+        if (comparison <= 0) {
+          previousKey = previousKeys.hasNext() ? previousKeys.next() : null;
+          i = i + 1;
+        }
+        if (comparison >= 0) {
+          currentKey = currentKeys.hasNext() ? currentKeys.next() : null;
+          j = j + 1;
+        }
+      }
+      snapshot = current;
+    }
+
+    private void signal(WatchEvent.Kind<Path> kind, String key) {
+      if (!kinds.contains(kind))
+        return;
+
+      String name = key.substring(prefix.length());
+      if (name.charAt(name.length() - 1) == PATH_SEPARATOR_CHAR)
+        name = name.substring(0, name.length() - 1);
+
+      synchronized (this) {
+        if (events.size() < MAX_EVENT_LIST_SIZE) {
+          events.add(new Event<>(kind, fileSystem.getPath(name)));
+        } else {
+          WatchEvent<?> last = events.get(events.size() - 1);
+          if (last.kind() == StandardWatchEventKinds.OVERFLOW) {
+            ((Event<?>) last).count = ((Event<?>) last).count + 1;
+          } else {
+            events.add(new Event<>(StandardWatchEventKinds.OVERFLOW, null));
+          }
+        }
+        if (!signalled) {
+          signalled = true;
+          S3WatchService.this.signalled.offer(this);
+        }
+      }
+    }
+
+    @Override
+    public boolean isValid() {
+      return valid && !closed;
+    }
+
+    @Override
+    public synchronized List<WatchEvent<?>> pollEvents() {
+      List<WatchEvent<?>> result = events;
+      events = new ArrayList<>();
+      return result;
+    }
+
+    @Override
+    public synchronized boolean reset() {
+      if (!isValid())
+        return false;
+      if (!events.isEmpty())
+        S3WatchService.this.signalled.offer(this);
+      else
+        signalled = false;
+      return true;
+    }
+
+    @Override
+    public void cancel() {
+      valid = false;
+      keys.remove(this);
+    }
+
+    @Override
+    public Watchable watchable() {
+      return directory;
+    }
+  }
+}
@@ -0,0 +1,36 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.options;
+
+import java.nio.file.WatchEvent;
+
+/**
+ * Modifiers for registering S3 directories with a watch service
+ */
+public enum S3WatchEventModifier implements WatchEvent.Modifier {
+  /**
+   * The directory only ever gains entries whose keys sort after every existing key, like
+   * timestamped logs. Each poll lists only the keys after the last known key, instead of the whole
+   * directory, so it costs one request no matter how large the directory grows. Only
+   * {@link java.nio.file.StandardWatchEventKinds#ENTRY_CREATE ENTRY_CREATE} events are reported;
+   * entries that are modified, deleted, or added out of order are not noticed.
+   */
+  APPEND_ONLY;
+}
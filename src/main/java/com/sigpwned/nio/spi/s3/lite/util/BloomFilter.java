@@ -0,0 +1,99 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter over 64-bit hashes. Answers whether an element might have been added,
+ * with no false negatives and a false positive rate fixed at construction. Callers hash elements
+ * with {@link #hash(CharSequence)} or any other well-mixed 64-bit hash, and the filter derives all
+ * of its bit positions from that one hash by double hashing.
+ */
+public class BloomFilter {
+  private final AtomicLongArray bits;
+  private final long bitCount;
+  private final int hashCount;
+
+  /**
+   * @param expectedInsertions the number of elements the filter is sized for
+   * @param falsePositiveRate the false positive rate once that many elements have been added
+   */
+  public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+    if (expectedInsertions < 0L)
+      throw new IllegalArgumentException("expectedInsertions must not be negative");
+    if (!(falsePositiveRate > 0.0 && falsePositiveRate < 1.0))
+      throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+    long n = Math.max(expectedInsertions, 1L);
+    long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2.0) * Math.log(2.0)));
+    long words = Math.max((m + 63L) / 64L, 1L);
+    if (words > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("filter too large");
+    this.bits = new AtomicLongArray((int) words);
+    this.bitCount = words * 64L;
+    this.hashCount = (int) Math.max(1L, Math.round((double) bitCount / n * Math.log(2.0)));
+  }
+
+  public void add(long hash) {
+    long h2 = Long.rotateLeft(hash, 32) | 1L;
+    for (int i = 1; i <= hashCount; i++) {
+      long bit = ((hash + i * h2) & Long.MAX_VALUE) % bitCount;
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+      long current;
+      do {
+        current = bits.get(word);
+        if ((current & mask) != 0L)
+          break;
+      } while (!bits.compareAndSet(word, current, current | mask));
+    }
+  }
+
+  /**
+   * Returns {@code false} if the element with the given hash was definitely never added
+   */
+  public boolean mightContain(long hash) {
+    long h2 = Long.rotateLeft(hash, 32) | 1L;
+    for (int i = 1; i <= hashCount; i++) {
+      long bit = ((hash + i * h2) & Long.MAX_VALUE) % bitCount;
+      if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0L)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns a well-mixed 64-bit hash of the given characters, suitable for this filter
+   */
+  public static long hash(CharSequence s) {
+    // FNV-1a, followed by the MurmurHash3 finalizer to spread the bits
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < s.length(); i++) {
+      h = h ^ s.charAt(i);
+      h = h * 0x100000001b3L;
+    }
+    h = h ^ (h >>> 33);
+    h = h * 0xff51afd7ed558ccdL;
+    h = h ^ (h >>> 33);
+    h = h * 0xc4ceb9fe1a85ec53L;
+    h = h ^ (h >>> 33);
+    return h;
+  }
+}
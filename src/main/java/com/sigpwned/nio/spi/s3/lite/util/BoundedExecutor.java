@@ -0,0 +1,178 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs tasks on a shared {@link Executor} with at most a fixed number in flight at once. Callers
+ * block in {@link #execute(Runnable)} while all permits are taken, which keeps producers that feed
+ * tasks from a streaming listing from getting ahead of the workers. Tasks are expected to handle
+ * their own checked failures; any unchecked exception a task throws is captured and rethrown from
+ * {@link #await()}.
+ *
+ * <p>
+ * Bounded executors are often nested, e.g., a directory copy whose workers each run a multipart
+ * copy, and all of them share the provider's executor. If that executor has a fixed number of
+ * threads, the outer workers can occupy every thread while they wait for inner tasks that cannot
+ * start. To make progress anyway, a caller that is waiting for a permit or for {@link #await()}
+ * runs any submitted task that has not started yet on its own thread.
+ */
+public class BoundedExecutor {
+  private static final long POLL_TIMEOUT_MILLIS = 100L;
+
+  private final Executor executor;
+  private final int parallelism;
+  private final Semaphore permits;
+  private final AtomicReference<RuntimeException> problem;
+
+  /**
+   * Submitted tasks that may not have started yet, oldest first
+   */
+  private final Queue<Task> pending;
+
+  public BoundedExecutor(Executor executor, int parallelism) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be positive");
+    this.executor = requireNonNull(executor);
+    this.parallelism = parallelism;
+    this.permits = new Semaphore(parallelism);
+    this.problem = new AtomicReference<>();
+    this.pending = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * A submitted task, which runs once, on whichever thread claims it first
+   */
+  private final class Task implements Runnable {
+    private final Runnable delegate;
+    private final AtomicBoolean claimed;
+
+    Task(Runnable delegate) {
+      this.delegate = delegate;
+      this.claimed = new AtomicBoolean(false);
+    }
+
+    boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    @Override
+    public void run() {
+      if (claim()) {
+        pending.remove(this);
+        runClaimed();
+      }
+    }
+
+    void runClaimed() {
+      try {
+        delegate.run();
+      } catch (RuntimeException e) {
+        problem.compareAndSet(null, e);
+      } finally {
+        permits.release();
+      }
+    }
+  }
+
+  /**
+   * Submits the given task, waiting for a permit if the maximum number of tasks are already
+   * running. While waiting, the caller may run earlier tasks that have not started yet.
+   *
+   * @throws InterruptedIOException if interrupted while waiting for a permit
+   * @throws IOException if the underlying executor rejects the task
+   */
+  public void execute(Runnable task) throws IOException {
+    requireNonNull(task);
+
+    acquire(1);
+
+    Task t = new Task(task);
+    pending.add(t);
+    try {
+      executor.execute(t);
+    } catch (RejectedExecutionException e) {
+      if (t.claim()) {
+        pending.remove(t);
+        permits.release();
+      }
+      throw new IOException("Failed to start S3 worker", e);
+    }
+  }
+
+  /**
+   * Waits for all submitted tasks to finish, running any that have not started yet on the calling
+   * thread.
+   *
+   * @throws InterruptedIOException if interrupted while waiting
+   * @throws RuntimeException the first unchecked exception thrown by any task, if any
+   */
+  public void await() throws IOException {
+    acquire(parallelism);
+    permits.release(parallelism);
+
+    RuntimeException e = problem.get();
+    if (e != null)
+      throw e;
+  }
+
+  private void acquire(int count) throws InterruptedIOException {
+    try {
+      while (!permits.tryAcquire(count)) {
+        // Help with a task that has not started, if any. Otherwise, wait for one to finish.
+        if (!runPending() && permits.tryAcquire(count, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+          return;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  /**
+   * Runs the oldest task that has not started yet on the calling thread, if any
+   *
+   * @return {@code true} if a task ran
+   */
+  private boolean runPending() {
+    for (Task t = pending.poll(); t != null; t = pending.poll()) {
+      if (t.claim()) {
+        t.runClaimed();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+}
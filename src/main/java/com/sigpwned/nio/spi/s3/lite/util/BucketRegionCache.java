@@ -0,0 +1,176 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static java.util.Objects.requireNonNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the region of each bucket, so that each bucket's region is looked up once. If the
+ * cache has a file, entries are loaded from it when the cache is created and saved to it whenever
+ * a new region is learned, so they survive restarts. Reads take no locks. All methods are
+ * thread-safe.
+ *
+ * <p>
+ * A bucket's region only changes if the bucket is deleted and recreated elsewhere, so entries do
+ * not expire. Entries loaded from the file are not {@link #isConfirmed(String) confirmed}, though,
+ * since the file may be much older than this process. Callers should check such an entry once, and
+ * then either {@link #confirm(String, String) confirm} it or {@link #invalidate(String, String)
+ * invalidate} it. Entries {@link #put(String, String) put} by this process are confirmed.
+ *
+ * <p>
+ * Several processes may share one file. Each save merges this cache's entries into the file's
+ * current contents rather than replacing them, so entries saved by other processes are kept. Saves
+ * are not locked across processes, so if two processes save at the same moment, one of their new
+ * entries may be lost. That only costs an extra lookup later.
+ */
+public class BucketRegionCache {
+  private final Path file;
+  private final ConcurrentMap<String, String> regions;
+  private final Set<String> confirmed;
+
+  /**
+   * Creates a cache that only lives in memory
+   */
+  public BucketRegionCache() {
+    this.file = null;
+    this.regions = new ConcurrentHashMap<>();
+    this.confirmed = ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Creates a cache backed by the given file, which need not exist yet
+   *
+   * @throws IOException if the file exists but cannot be read
+   */
+  public BucketRegionCache(Path file) throws IOException {
+    this.file = requireNonNull(file).toAbsolutePath();
+    this.regions = new ConcurrentHashMap<>();
+    this.confirmed = ConcurrentHashMap.newKeySet();
+
+    Properties properties = load(this.file);
+    for (String bucket : properties.stringPropertyNames())
+      regions.put(bucket, properties.getProperty(bucket));
+  }
+
+  /**
+   * Returns the region of the given bucket, or {@code null} if it is not known
+   */
+  public String get(String bucket) {
+    return regions.get(bucket);
+  }
+
+  /**
+   * Returns {@code true} if the given bucket's region was learned or confirmed by this process,
+   * rather than only loaded from the file
+   */
+  public boolean isConfirmed(String bucket) {
+    return confirmed.contains(bucket);
+  }
+
+  /**
+   * Marks the given bucket's region as checked, if it is still the given region
+   */
+  public void confirm(String bucket, String region) {
+    if (requireNonNull(region).equals(regions.get(requireNonNull(bucket))))
+      confirmed.add(bucket);
+  }
+
+  public void put(String bucket, String region) {
+    confirmed.add(requireNonNull(bucket));
+    String previous = regions.put(bucket, requireNonNull(region));
+    if (!region.equals(previous))
+      trySave(bucket);
+  }
+
+  /**
+   * Forgets the region of the given bucket if it is still the given stale region, so that the next
+   * caller looks it up again. The entry is also removed from the file.
+   *
+   * @return {@code true} if the entry was removed
+   */
+  public boolean invalidate(String bucket, String region) {
+    boolean result = regions.remove(requireNonNull(bucket), requireNonNull(region));
+    if (result) {
+      confirmed.remove(bucket);
+      trySave(bucket);
+    }
+    return result;
+  }
+
+  private void trySave(String bucket) {
+    if (file == null)
+      return;
+    try {
+      save(bucket);
+    } catch (IOException e) {
+      // The file is only an optimization, so failing to save it must not fail the lookup. The
+      // region is still cached in memory, and the next change tries again.
+    }
+  }
+
+  /**
+   * Saves the given bucket's entry, or its absence, and any other entries the file lacks
+   */
+  private synchronized void save(String bucket) throws IOException {
+    // Start from what's in the file now, since other processes may have saved entries there
+    Properties properties = load(file);
+    for (Map.Entry<String, String> entry : regions.entrySet())
+      properties.putIfAbsent(entry.getKey(), entry.getValue());
+    String region = regions.get(bucket);
+    if (region != null)
+      properties.setProperty(bucket, region);
+    else
+      properties.remove(bucket);
+
+    // Use a unique temporary file, since other processes may share the file
+    Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        properties.store(out, "S3 bucket regions");
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static Properties load(Path file) throws IOException {
+    Properties result = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      result.load(in);
+    } catch (NoSuchFileException e) {
+      // That's fine. We'll create it when we learn our first region.
+    }
+    return result;
+  }
+}
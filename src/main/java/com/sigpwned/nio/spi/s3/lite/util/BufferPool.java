@@ -0,0 +1,96 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A fixed number of reusable byte buffers. Buffers are allocated lazily, and callers block in
+ * {@link #acquire(int)} while all buffers are checked out, so at most {@code capacity} buffers are
+ * in use at once. Only buffers up to the buffer size are kept for reuse. A larger buffer is
+ * allocated for the caller that asks for it and dropped when it is released, so the memory the pool
+ * keeps between uses is capped at {@code capacity} times the buffer size.
+ */
+public class BufferPool {
+  private final int capacity;
+  private final int bufferSize;
+  private final Semaphore permits;
+  private final ConcurrentLinkedQueue<byte[]> buffers;
+
+  /**
+   * @param capacity the number of buffers that may be checked out at once
+   * @param bufferSize the length of the largest buffer kept for reuse
+   */
+  public BufferPool(int capacity, int bufferSize) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive");
+    if (bufferSize < 1)
+      throw new IllegalArgumentException("bufferSize must be positive");
+    this.capacity = capacity;
+    this.bufferSize = bufferSize;
+    this.permits = new Semaphore(capacity);
+    this.buffers = new ConcurrentLinkedQueue<>();
+  }
+
+  /**
+   * Checks out a buffer of at least the given length, waiting if all buffers are in use. Every
+   * buffer acquired must be returned with {@link #release(byte[])}.
+   *
+   * @throws InterruptedIOException if interrupted while waiting
+   */
+  public byte[] acquire(int length) throws InterruptedIOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+
+    byte[] result = buffers.poll();
+    if (result == null || result.length < length) {
+      try {
+        result = new byte[length];
+      } catch (OutOfMemoryError e) {
+        permits.release();
+        throw e;
+      }
+    }
+
+    return result;
+  }
+
+  public void release(byte[] buffer) {
+    if (buffer == null)
+      throw new NullPointerException();
+    if (buffer.length <= bufferSize)
+      buffers.offer(buffer);
+    permits.release();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+}
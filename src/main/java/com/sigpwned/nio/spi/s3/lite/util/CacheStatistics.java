@@ -0,0 +1,85 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import java.util.Objects;
+
+/**
+ * A point-in-time snapshot of a cache's lookup counts
+ */
+public final class CacheStatistics {
+  public static final CacheStatistics EMPTY = new CacheStatistics(0L, 0L, 0);
+
+  private final long hitCount;
+  private final long missCount;
+  private final int size;
+
+  public CacheStatistics(long hitCount, long missCount, int size) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.size = size;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * The number of entries in the cache when the snapshot was taken
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * The fraction of lookups that were hits, or zero if there were no lookups
+   */
+  public double getHitRate() {
+    long lookupCount = hitCount + missCount;
+    return lookupCount == 0L ? 0.0 : (double) hitCount / lookupCount;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(hitCount, missCount, size);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    CacheStatistics other = (CacheStatistics) obj;
+    return hitCount == other.hitCount && missCount == other.missCount && size == other.size;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStatistics [hitCount=" + hitCount + ", missCount=" + missCount + ", size=" + size
+        + "]";
+  }
+}
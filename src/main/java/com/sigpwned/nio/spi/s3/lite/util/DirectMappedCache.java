@@ -0,0 +1,83 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded cache in which each key can live in exactly one slot, chosen by its hash code. Writing
+ * a key replaces whatever entry held its slot, so the cache never grows past its slot count and
+ * never needs to track recency. Reads and writes take no locks, which suits small, hot lookups
+ * from many threads, where an occasional lost entry only costs a recomputation. All methods are
+ * thread-safe.
+ */
+public class DirectMappedCache<K, V> {
+  private static final class Entry<K, V> {
+    final K key;
+    final V value;
+
+    Entry(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  private final Entry<K, V>[] slots;
+  private final int mask;
+
+  /**
+   * @param minSlots the minimum number of slots, which is rounded up to a power of two
+   */
+  @SuppressWarnings("unchecked")
+  public DirectMappedCache(int minSlots) {
+    if (minSlots < 1 || minSlots > 1 << 30)
+      throw new IllegalArgumentException("minSlots must be between 1 and 2^30");
+    int size = Integer.highestOneBit(minSlots);
+    if (size < minSlots)
+      size = size << 1;
+    this.slots = (Entry<K, V>[]) new Entry<?, ?>[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * Returns the value for the given key, or {@code null} if it is not cached
+   */
+  public V get(K key) {
+    // Entries are immutable, so a racy read sees either a whole entry or null
+    Entry<K, V> entry = slots[slot(key)];
+    if (entry == null || !entry.key.equals(key))
+      return null;
+    return entry.value;
+  }
+
+  public void put(K key, V value) {
+    slots[slot(key)] = new Entry<>(requireNonNull(key), requireNonNull(value));
+  }
+
+  public void invalidateAll() {
+    for (int i = 0; i < slots.length; i++)
+      slots[i] = null;
+  }
+
+  private int slot(K key) {
+    int h = key.hashCode();
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
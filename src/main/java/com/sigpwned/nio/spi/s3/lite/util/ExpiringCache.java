@@ -0,0 +1,113 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static java.util.Objects.requireNonNull;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded map whose entries expire a fixed time after they are written. When the cache is full,
+ * the least recently used entry is evicted. All methods are thread-safe.
+ */
+public class ExpiringCache<K, V> {
+  private static final class Entry<V> {
+    final V value;
+    final long expiresAt;
+
+    Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final long ttlNanos;
+  private final int maxSize;
+  private final LinkedHashMap<K, Entry<V>> entries;
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * @param ttl how long each entry lives after it is written
+   * @param maxSize the maximum number of entries
+   */
+  public ExpiringCache(Duration ttl, int maxSize) {
+    if (ttl.isNegative() || ttl.isZero())
+      throw new IllegalArgumentException("ttl must be positive");
+    if (maxSize < 1)
+      throw new IllegalArgumentException("maxSize must be positive");
+    this.ttlNanos = ttl.toNanos();
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        return size() > ExpiringCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the live value for the given key, or {@code null} if there is none
+   */
+  public synchronized V get(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      missCount = missCount + 1;
+      return null;
+    }
+    if (System.nanoTime() - entry.expiresAt >= 0L) {
+      entries.remove(key);
+      missCount = missCount + 1;
+      return null;
+    }
+    hitCount = hitCount + 1;
+    return entry.value;
+  }
+
+  public synchronized void put(K key, V value) {
+    entries.put(requireNonNull(key),
+        new Entry<>(requireNonNull(value), System.nanoTime() + ttlNanos));
+  }
+
+  public synchronized void invalidate(K key) {
+    entries.remove(key);
+  }
+
+  public synchronized void invalidateAll() {
+    entries.clear();
+  }
+
+  /**
+   * Returns the number of entries, including any that have expired but not yet been removed
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the hits and misses of {@link #get(Object)} since this cache was created
+   */
+  public synchronized CacheStatistics statistics() {
+    return new CacheStatistics(hitCount, missCount, entries.size());
+  }
+}
@@ -0,0 +1,257 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable sorted list of strings stored as front-coded UTF-8 in one byte array. Each string
+ * is stored as the length of the prefix it shares with the previous string, followed by the rest
+ * of its bytes. Every {@link #BLOCK_SIZE}th string is stored in full, so any string can be decoded
+ * from the start of its block. Sorted keys that share long prefixes, such as S3 keys, usually take
+ * a small fraction of the memory of the equivalent {@code String} objects.
+ *
+ * <p>
+ * Strings are ordered by their UTF-8 bytes, which is the same as code point order and the order
+ * S3 lists keys in.
+ */
+public class FrontCodedStringList {
+  public static final int BLOCK_SIZE = 16;
+
+  public static class Builder {
+    private byte[] data;
+    private int length;
+    private int[] blockOffsets;
+    private int size;
+    private byte[] previous;
+
+    public Builder() {
+      this.data = new byte[4096];
+      this.length = 0;
+      this.blockOffsets = new int[64];
+      this.size = 0;
+      this.previous = new byte[0];
+    }
+
+    /**
+     * @throws IllegalArgumentException if the string is not greater than the last one added
+     */
+    public Builder add(String s) {
+      byte[] bytes = s.getBytes(UTF_8);
+      if (size != 0 && compare(previous, previous.length, bytes, bytes.length) >= 0)
+        throw new IllegalArgumentException("strings must be added in ascending order");
+
+      int shared = 0;
+      if (size % BLOCK_SIZE != 0) {
+        int limit = Math.min(previous.length, bytes.length);
+        while (shared < limit && previous[shared] == bytes[shared])
+          shared = shared + 1;
+      } else {
+        if (size / BLOCK_SIZE == blockOffsets.length)
+          blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+        blockOffsets[size / BLOCK_SIZE] = length;
+      }
+
+      ensureCapacity(10 + bytes.length - shared);
+      writeVarint(shared);
+      writeVarint(bytes.length - shared);
+      System.arraycopy(bytes, shared, data, length, bytes.length - shared);
+      length = length + bytes.length - shared;
+
+      previous = bytes;
+      size = size + 1;
+      return this;
+    }
+
+    private void ensureCapacity(int extra) {
+      if (length + extra > data.length)
+        data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+    }
+
+    private void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        data[length++] = (byte) ((value & 0x7F) | 0x80);
+        value = value >>> 7;
+      }
+      data[length++] = (byte) value;
+    }
+
+    public FrontCodedStringList build() {
+      return new FrontCodedStringList(Arrays.copyOf(data, length),
+          Arrays.copyOf(blockOffsets, (size + BLOCK_SIZE - 1) / BLOCK_SIZE), size);
+    }
+  }
+
+  private final byte[] data;
+  private final int[] blockOffsets;
+  private final int size;
+
+  private FrontCodedStringList(byte[] data, int[] blockOffsets, int size) {
+    this.data = data;
+    this.blockOffsets = blockOffsets;
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The number of bytes used to store the strings
+   */
+  public long memoryUsage() {
+    return data.length + 4L * blockOffsets.length;
+  }
+
+  public String get(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException(Integer.toString(index));
+    Cursor cursor = new Cursor(index / BLOCK_SIZE * BLOCK_SIZE);
+    while (cursor.index < index)
+      cursor.advance();
+    return cursor.current();
+  }
+
+  /**
+   * Returns the index of the first string not less than the given string
+   */
+  public int lowerBound(String s) {
+    byte[] target = s.getBytes(UTF_8);
+
+    // Find the first block whose first string is not less than the target
+    int lo = 0;
+    int hi = blockOffsets.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      Cursor head = new Cursor(mid * BLOCK_SIZE);
+      if (compare(head.bytes, head.length, target, target.length) < 0)
+        lo = mid + 1;
+      else
+        hi = mid;
+    }
+    if (lo == 0)
+      return 0;
+
+    // The answer is in the previous block, or is the first string of this one
+    int end = Math.min(lo * BLOCK_SIZE, size);
+    Cursor cursor = new Cursor((lo - 1) * BLOCK_SIZE);
+    while (true) {
+      if (compare(cursor.bytes, cursor.length, target, target.length) >= 0)
+        return cursor.index;
+      if (cursor.index + 1 >= end)
+        return end;
+      cursor.advance();
+    }
+  }
+
+  /**
+   * Returns the strings from {@code from}, inclusive, to {@code to}, exclusive, decoding each one
+   * from the one before
+   */
+  public Iterator<String> iterator(int from, int to) {
+    if (from < 0 || to > size || from > to)
+      throw new IndexOutOfBoundsException();
+    return new Iterator<String>() {
+      private Cursor cursor = null;
+
+      @Override
+      public boolean hasNext() {
+        return (cursor == null ? from : cursor.index + 1) < to;
+      }
+
+      @Override
+      public String next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        if (cursor == null) {
+          cursor = new Cursor(from / BLOCK_SIZE * BLOCK_SIZE);
+          while (cursor.index < from)
+            cursor.advance();
+        } else {
+          cursor.advance();
+        }
+        return cursor.current();
+      }
+    };
+  }
+
+  /**
+   * Decodes strings in order, starting from the first string of a block
+   */
+  private final class Cursor {
+    int index;
+    int position;
+    byte[] bytes;
+    int length;
+
+    Cursor(int blockStart) {
+      this.index = blockStart;
+      this.position = blockOffsets[blockStart / BLOCK_SIZE];
+      this.bytes = new byte[64];
+      this.length = 0;
+      decode();
+    }
+
+    void advance() {
+      index = index + 1;
+      decode();
+    }
+
+    private void decode() {
+      int shared = readVarint();
+      int suffixLength = readVarint();
+      if (shared + suffixLength > bytes.length)
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, shared + suffixLength));
+      System.arraycopy(data, position, bytes, shared, suffixLength);
+      position = position + suffixLength;
+      length = shared + suffixLength;
+    }
+
+    private int readVarint() {
+      int result = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[position++];
+        result = result | ((b & 0x7F) << shift);
+        shift = shift + 7;
+      } while ((b & 0x80) != 0);
+      return result;
+    }
+
+    String current() {
+      return new String(bytes, 0, length, UTF_8);
+    }
+  }
+
+  private static int compare(byte[] a, int alength, byte[] b, int blength) {
+    int n = Math.min(alength, blength);
+    for (int i = 0; i < n; i++) {
+      int ai = a[i] & 0xFF;
+      int bi = b[i] & 0xFF;
+      if (ai != bi)
+        return ai - bi;
+    }
+    return alength - blength;
+  }
+}
@@ -0,0 +1,219 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON parser for small documents like S3 Inventory manifests. Objects become
+ * {@link Map}s, arrays become {@link List}s, numbers become {@link Double}s, and strings, booleans,
+ * and null map to themselves.
+ */
+public final class Json {
+  private Json() {}
+
+  /**
+   * @throws IllegalArgumentException if the text is not valid JSON
+   */
+  public static Object parse(String text) {
+    Json.Parser parser = new Json.Parser(text);
+    Object result = parser.value();
+    parser.whitespace();
+    if (parser.position != text.length())
+      throw parser.error("trailing characters");
+    return result;
+  }
+
+  private static final class Parser {
+    private final String text;
+    private int position;
+
+    Parser(String text) {
+      this.text = text;
+      this.position = 0;
+    }
+
+    Object value() {
+      whitespace();
+      if (position == text.length())
+        throw error("unexpected end of input");
+      char c = text.charAt(position);
+      switch (c) {
+        case '{':
+          return object();
+        case '[':
+          return array();
+        case '"':
+          return string();
+        case 't':
+          return literal("true", Boolean.TRUE);
+        case 'f':
+          return literal("false", Boolean.FALSE);
+        case 'n':
+          return literal("null", null);
+        default:
+          return number();
+      }
+    }
+
+    private Map<String, Object> object() {
+      Map<String, Object> result = new LinkedHashMap<>();
+      position = position + 1;
+      whitespace();
+      if (peek() == '}') {
+        position = position + 1;
+        return result;
+      }
+      while (true) {
+        whitespace();
+        if (peek() != '"')
+          throw error("expected string");
+        String name = string();
+        whitespace();
+        expect(':');
+        result.put(name, value());
+        whitespace();
+        if (peek() == ',') {
+          position = position + 1;
+        } else {
+          expect('}');
+          return result;
+        }
+      }
+    }
+
+    private List<Object> array() {
+      List<Object> result = new ArrayList<>();
+      position = position + 1;
+      whitespace();
+      if (peek() == ']') {
+        position = position + 1;
+        return result;
+      }
+      while (true) {
+        result.add(value());
+        whitespace();
+        if (peek() == ',') {
+          position = position + 1;
+        } else {
+          expect(']');
+          return result;
+        }
+      }
+    }
+
+    private String string() {
+      StringBuilder result = new StringBuilder();
+      position = position + 1;
+      while (true) {
+        if (position >= text.length())
+          throw error("unterminated string");
+        char c = text.charAt(position++);
+        if (c == '"')
+          return result.toString();
+        if (c != '\\') {
+          result.append(c);
+          continue;
+        }
+        if (position >= text.length())
+          throw error("unterminated escape");
+        char e = text.charAt(position++);
+        switch (e) {
+          case 'b':
+            result.append('\b');
+            break;
+          case 'f':
+            result.append('\f');
+            break;
+          case 'n':
+            result.append('\n');
+            break;
+          case 'r':
+            result.append('\r');
+            break;
+          case 't':
+            result.append('\t');
+            break;
+          case '"':
+          case '\\':
+          case '/':
+            result.append(e);
+            break;
+          case 'u':
+            if (position + 4 > text.length())
+              throw error("bad unicode escape");
+            int code = 0;
+            for (int i = 0; i < 4; i++) {
+              int digit = Character.digit(text.charAt(position++), 16);
+              if (digit == -1)
+                throw error("bad unicode escape");
+              code = code * 16 + digit;
+            }
+            result.append((char) code);
+            break;
+          default:
+            throw error("bad escape");
+        }
+      }
+    }
+
+    private Object literal(String word, Object value) {
+      if (!text.startsWith(word, position))
+        throw error("unexpected token");
+      position = position + word.length();
+      return value;
+    }
+
+    private Double number() {
+      int start = position;
+      while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) != -1)
+        position = position + 1;
+      try {
+        return Double.valueOf(text.substring(start, position));
+      } catch (NumberFormatException e) {
+        throw error("unexpected token");
+      }
+    }
+
+    private char peek() {
+      if (position >= text.length())
+        throw error("unexpected end of input");
+      return text.charAt(position);
+    }
+
+    private void expect(char c) {
+      if (peek() != c)
+        throw error("expected '" + c + "'");
+      position = position + 1;
+    }
+
+    void whitespace() {
+      while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+        position = position + 1;
+    }
+
+    IllegalArgumentException error(String message) {
+      return new IllegalArgumentException("Invalid JSON at " + position + ": " + message);
+    }
+  }
+}
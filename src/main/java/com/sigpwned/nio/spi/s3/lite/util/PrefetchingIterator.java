@@ -0,0 +1,229 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static java.util.Objects.requireNonNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drains another iterator on a background thread, keeping up to a fixed number of elements ready
+ * ahead of the consumer. This is useful when each element is expensive to produce, like a page of
+ * a listing, since the next element is fetched while the consumer works on the current one. An
+ * unchecked exception thrown by the delegate is rethrown to the consumer in order.
+ *
+ * <p>
+ * If the consumer stops taking elements for longer than the idle timeout, e.g., because it was
+ * abandoned without being closed, the background thread stops and hands the delegate back. A
+ * consumer that comes back later gets the rest of the elements from the delegate directly, so the
+ * background thread never waits forever and no elements are lost.
+ */
+public class PrefetchingIterator<T> implements Iterator<T>, Closeable {
+  /**
+   * The default time the background thread waits for the consumer to make room
+   */
+  public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(1L);
+
+  private static final Object END = new Object();
+
+  private static final long POLL_TIMEOUT_MILLIS = 100L;
+
+  private static final class Failure {
+    final RuntimeException problem;
+
+    Failure(RuntimeException problem) {
+      this.problem = problem;
+    }
+  }
+
+  private final Iterator<? extends T> delegate;
+  private final BlockingQueue<Object> queue;
+  private final long idleTimeoutNanos;
+  private volatile boolean closed;
+
+  /**
+   * Set by the background thread when it stops early, after which only the consumer touches the
+   * delegate
+   */
+  private volatile boolean handedBack;
+
+  /**
+   * The element the background thread could not queue when it stopped early, if any. Published by
+   * {@link #handedBack}.
+   */
+  private Object leftover;
+
+  private Object next;
+
+  /**
+   * @param delegate the iterator to drain, which is only accessed from the background thread
+   * @param capacity the maximum number of elements to keep ready
+   * @param executor runs the background thread
+   * @throws IOException if the executor rejects the background thread
+   */
+  public PrefetchingIterator(Iterator<? extends T> delegate, int capacity, Executor executor)
+      throws IOException {
+    this(delegate, capacity, executor, DEFAULT_IDLE_TIMEOUT);
+  }
+
+  /**
+   * @param delegate the iterator to drain, which is only accessed from the background thread until
+   *        it hands the delegate back
+   * @param capacity the maximum number of elements to keep ready
+   * @param executor runs the background thread
+   * @param idleTimeout how long the background thread waits for the consumer to make room before
+   *        it stops
+   * @throws IOException if the executor rejects the background thread
+   */
+  public PrefetchingIterator(Iterator<? extends T> delegate, int capacity, Executor executor,
+      Duration idleTimeout) throws IOException {
+    if (capacity < 1)
+      throw new IllegalArgumentException("capacity must be positive");
+    if (idleTimeout.isNegative() || idleTimeout.isZero())
+      throw new IllegalArgumentException("idleTimeout must be positive");
+    this.delegate = requireNonNull(delegate);
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.idleTimeoutNanos = idleTimeout.toNanos();
+    this.closed = false;
+    this.handedBack = false;
+    this.leftover = null;
+    this.next = null;
+    try {
+      executor.execute(this::prefetch);
+    } catch (RejectedExecutionException e) {
+      throw new IOException("Failed to start prefetch", e);
+    }
+  }
+
+  private void prefetch() {
+    try {
+      while (!closed && delegate.hasNext()) {
+        Object x = delegate.next();
+        if (!put(x)) {
+          handBack(x);
+          return;
+        }
+      }
+      if (!put(END))
+        handBack(END);
+    } catch (InterruptedIOException e) {
+      // The listing is incomplete, and the delegate may be in any state, so don't hand it back
+      handBack(new Failure(new UncheckedIOException(e)));
+    } catch (RuntimeException e) {
+      try {
+        if (!put(new Failure(e)))
+          handBack(new Failure(e));
+      } catch (InterruptedIOException e2) {
+        handBack(new Failure(e));
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if the element was queued or this iterator is closed, or {@code false} if
+   *         the consumer took nothing for the idle timeout
+   */
+  private boolean put(Object x) throws InterruptedIOException {
+    final long start = System.nanoTime();
+    try {
+      while (!closed) {
+        if (queue.offer(x, POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+          return true;
+        if (System.nanoTime() - start >= idleTimeoutNanos)
+          return false;
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private void handBack(Object x) {
+    leftover = x;
+    handedBack = true;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      if (closed)
+        return false;
+      try {
+        next = take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new UncheckedIOException(new InterruptedIOException());
+      }
+    }
+    if (next instanceof Failure)
+      throw ((Failure) next).problem;
+    return next != END;
+  }
+
+  private Object take() throws InterruptedException {
+    while (!closed) {
+      if (handedBack) {
+        Object result = queue.poll();
+        if (result != null)
+          return result;
+        if (leftover != null) {
+          result = leftover;
+          leftover = null;
+          return result;
+        }
+        return delegate.hasNext() ? delegate.next() : END;
+      }
+      Object result = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      if (result != null)
+        return result;
+    }
+    return END;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    T result = (T) next;
+    next = null;
+    return result;
+  }
+
+  /**
+   * Stops the background thread and discards any prefetched elements
+   */
+  @Override
+  public void close() {
+    closed = true;
+    queue.clear();
+  }
+}
@@ -0,0 +1,74 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import java.util.Objects;
+
+/**
+ * The number of objects under a prefix and their total size
+ */
+public final class StorageUsage {
+  public static final StorageUsage EMPTY = new StorageUsage(0L, 0L);
+
+  private final long objectCount;
+  private final long totalSize;
+
+  public StorageUsage(long objectCount, long totalSize) {
+    this.objectCount = objectCount;
+    this.totalSize = totalSize;
+  }
+
+  public long getObjectCount() {
+    return objectCount;
+  }
+
+  /**
+   * The total size of the objects, in bytes
+   */
+  public long getTotalSize() {
+    return totalSize;
+  }
+
+  public StorageUsage plus(StorageUsage other) {
+    return new StorageUsage(objectCount + other.objectCount, totalSize + other.totalSize);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(objectCount, totalSize);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    StorageUsage other = (StorageUsage) obj;
+    return objectCount == other.objectCount && totalSize == other.totalSize;
+  }
+
+  @Override
+  public String toString() {
+    return "StorageUsage [objectCount=" + objectCount + ", totalSize=" + totalSize + "]";
+  }
+}
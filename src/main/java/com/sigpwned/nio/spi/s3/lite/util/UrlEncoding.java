@@ -24,6 +24,28 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 
 public final class UrlEncoding {
+  private static final String ALPHANUMERIC =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+  /**
+   * Characters left as-is in URI paths: RFC 3986 pchar, minus percent-encoded octets, plus "/"
+   */
+  private static final boolean[] URI_PATH_SAFE = asciiTable(ALPHANUMERIC + "-._~!$&'()*+,;=:@/");
+
+  /**
+   * Characters {@link URLEncoder} leaves as-is, plus "/"
+   */
+  private static final boolean[] COPY_SOURCE_SAFE = asciiTable(ALPHANUMERIC + "-._*/");
+
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  private static boolean[] asciiTable(String chars) {
+    boolean[] result = new boolean[128];
+    for (int i = 0; i < chars.length(); i++)
+      result[chars.charAt(i)] = true;
+    return result;
+  }
+
   public static String urlencode(String s) {
     try {
       return URLEncoder.encode(s, "UTF-8");
@@ -32,6 +54,82 @@ public final class UrlEncoding {
     }
   }
 
+  /**
+   * Encodes the given path for use in a URI path or an {@code x-amz-copy-source} header. Unlike
+   * {@link #urlencode(String)}, separators are left as-is and spaces become {@code %20}.
+   */
+  public static String urlencodePath(String s) {
+    return encode(s, COPY_SOURCE_SAFE);
+  }
+
+  /**
+   * Encodes the given path for use as the path of a URI, per RFC 3986. Characters that may appear
+   * in a URI path, including separators, are left as-is; all others are percent-encoded as UTF-8.
+   * In particular, spaces become {@code %20}, not {@code +}.
+   */
+  public static String encodeUriPath(String s) {
+    return encode(s, URI_PATH_SAFE);
+  }
+
+  /**
+   * Appends the given range of the given string to the given builder, encoded as by
+   * {@link #encodeUriPath(String)}
+   */
+  public static StringBuilder appendEncodedUriPath(StringBuilder out, String s, int start,
+      int end) {
+    encode(out, s, start, end, URI_PATH_SAFE);
+    return out;
+  }
+
+  private static String encode(String s, boolean[] safe) {
+    final int length = s.length();
+    int i = 0;
+    while (i < length && s.charAt(i) < 128 && safe[s.charAt(i)])
+      i = i + 1;
+    if (i == length)
+      return s;
+    StringBuilder result = new StringBuilder(length + 16).append(s, 0, i);
+    encode(result, s, i, length, safe);
+    return result.toString();
+  }
+
+  /**
+   * Encodes in one pass, writing UTF-8 bytes straight to the output. Unpaired surrogates become
+   * "?", as {@link String#getBytes(java.nio.charset.Charset)} would encode them.
+   */
+  private static void encode(StringBuilder out, String s, int start, int end, boolean[] safe) {
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (c < 128) {
+        if (safe[c])
+          out.append(c);
+        else
+          appendEscaped(out, c);
+      } else if (c < 0x800) {
+        appendEscaped(out, 0xC0 | (c >> 6));
+        appendEscaped(out, 0x80 | (c & 0x3F));
+      } else if (!Character.isSurrogate(c)) {
+        appendEscaped(out, 0xE0 | (c >> 12));
+        appendEscaped(out, 0x80 | ((c >> 6) & 0x3F));
+        appendEscaped(out, 0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < end
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+        i = i + 1;
+        appendEscaped(out, 0xF0 | (codePoint >> 18));
+        appendEscaped(out, 0x80 | ((codePoint >> 12) & 0x3F));
+        appendEscaped(out, 0x80 | ((codePoint >> 6) & 0x3F));
+        appendEscaped(out, 0x80 | (codePoint & 0x3F));
+      } else {
+        appendEscaped(out, '?');
+      }
+    }
+  }
+
+  private static void appendEscaped(StringBuilder out, int b) {
+    out.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+  }
+
   public static String urldecode(String s) {
     try {
       return URLDecoder.decode(s, "UTF-8");
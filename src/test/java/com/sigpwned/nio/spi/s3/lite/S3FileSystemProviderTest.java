@@ -21,20 +21,54 @@ package com.sigpwned.nio.spi.s3.lite;
 
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -49,12 +83,21 @@ import com.sigpwned.aws.sdk.lite.s3.S3Client;
 import com.sigpwned.aws.sdk.lite.s3.S3ClientBuilder;
 import com.sigpwned.aws.sdk.lite.s3.exception.NoSuchKeyException;
 import com.sigpwned.aws.sdk.lite.s3.model.CreateBucketRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.DeleteBucketRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.DeleteObjectRequest;
 import com.sigpwned.aws.sdk.lite.s3.model.GetObjectRequest;
 import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.HeadObjectResponse;
 import com.sigpwned.aws.sdk.lite.s3.model.PutObjectRequest;
+import com.sigpwned.aws.sdk.lite.s3.model.S3Object;
 import com.sigpwned.httpmodel.core.util.MoreByteStreams;
+import com.sigpwned.nio.spi.s3.lite.options.S3WatchEventModifier;
+import com.sigpwned.nio.spi.s3.lite.util.BucketRegionCache;
+import com.sigpwned.nio.spi.s3.lite.util.StorageUsage;
 
 public class S3FileSystemProviderTest {
+  public S3ClientBuilder clientBuilder;
+
   public S3Client client;
 
   @Rule
@@ -69,14 +112,13 @@ public class S3FileSystemProviderTest {
         AwsBasicCredentials.of(localstack.getAccessKey(), localstack.getSecretKey());
     final String region = localstack.getRegion();
 
-    final S3ClientBuilder defaultS3ClientBuilder =
-        S3Client.builder().credentialsProvider(() -> credentials).region(region)
-            .endpointProvider((endpointParams) -> Endpoint.builder().url(endpoint).build());
+    clientBuilder = S3Client.builder().credentialsProvider(() -> credentials).region(region)
+        .endpointProvider((endpointParams) -> Endpoint.builder().url(endpoint).build());
 
-    client = defaultS3ClientBuilder.build();
+    client = clientBuilder.build();
 
     S3FileSystemProvider.setDefaultClientBuilderSupplier(() -> {
-      return defaultS3ClientBuilder;
+      return clientBuilder;
     });
   }
 
@@ -128,6 +170,60 @@ public class S3FileSystemProviderTest {
     assertThat(text, is(contents));
   }
 
+  @Test(expected = IOException.class)
+  public void writeFailureTest() throws IOException {
+    final String bucketName = "example";
+    final String key = "hello.txt";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    final Path path =
+        Paths.get(URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, key)));
+
+    // The file system exists, but the PutObject will fail
+    client.deleteBucket(DeleteBucketRequest.builder().bucket(bucketName).build());
+
+    try (OutputStream out = Files.newOutputStream(path)) {
+      out.write("Hello, world!".getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test(expected = FileAlreadyExistsException.class)
+  public void writeCreateNewTargetExistsTest() throws IOException {
+    final String bucketName = "example";
+    final String key = "hello.txt";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+        RequestBody.fromString("Hello", StandardCharsets.UTF_8));
+
+    try (OutputStream out = Files.newOutputStream(
+        Paths.get(URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, key))),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      out.write("Hello, world!".getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test(expected = FileAlreadyExistsException.class)
+  public void copyTargetExistsTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    for (String key : asList("hello.txt", "world.txt")) {
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+          RequestBody.fromString(key, StandardCharsets.UTF_8));
+    }
+
+    Files.copy(
+        Paths.get(
+            URI.create(format("%s://%s/hello.txt", S3FileSystemProvider.SCHEME, bucketName))),
+        Paths.get(
+            URI.create(format("%s://%s/world.txt", S3FileSystemProvider.SCHEME, bucketName))));
+  }
+
   // TODO create file target exists test
   // TODO create file target not exists test
   // TODO truncate write
@@ -159,6 +255,49 @@ public class S3FileSystemProviderTest {
     assertThat(text, is(contents));
   }
 
+  @Test
+  public void pipelinedCopyTest() throws IOException {
+    final String sourceBucketName = "source";
+    final String targetBucketName = "target";
+    final byte[] small = "Hello, world!".getBytes(StandardCharsets.UTF_8);
+    final byte[] large = new byte[S3PipelinedCopy.PART_SIZE + 1024 * 1024];
+    new Random(0L).nextBytes(large);
+
+    client.createBucket(CreateBucketRequest.builder().bucket(sourceBucketName).build());
+    client.createBucket(CreateBucketRequest.builder().bucket(targetBucketName).build());
+
+    for (String key : asList("small.txt", "large.bin")) {
+      final byte[] contents = key.equals("small.txt") ? small : large;
+      client.putObject(
+          PutObjectRequest.builder().bucket(sourceBucketName).key(key)
+              .metadata(singletonMap("color", "blue")).build(),
+          new RequestBody((long) contents.length, "application/x-example",
+              () -> new ByteArrayInputStream(contents)));
+    }
+
+    // A file system with its own client can't copy server-side from the provider's file systems
+    final Path source = Paths
+        .get(URI.create(format("%s://%s/", S3FileSystemProvider.SCHEME, sourceBucketName)));
+    final S3FileSystem target = new S3FileSystem(
+        (S3FileSystemProvider) source.getFileSystem().provider(), client, targetBucketName);
+
+    for (String key : asList("small.txt", "large.bin")) {
+      Files.copy(source.resolve(key), target.getPath("/" + key));
+
+      final HeadObjectResponse head = client
+          .headObject(HeadObjectRequest.builder().bucket(targetBucketName).key(key).build());
+      assertThat(head.contentType(), is("application/x-example"));
+      assertThat(head.metadata().get("color"), is("blue"));
+
+      byte[] copied;
+      try (InputStream in = client
+          .getObject(GetObjectRequest.builder().bucket(targetBucketName).key(key).build())) {
+        copied = MoreByteStreams.toByteArray(in);
+      }
+      assertThat(Arrays.equals(copied, key.equals("small.txt") ? small : large), is(true));
+    }
+  }
+
 
   @Test
   public void listTest() throws IOException {
@@ -193,6 +332,799 @@ public class S3FileSystemProviderTest {
                 directoryName, fileName2)))))));
   }
 
+  @Test
+  public void moveDirectoryTest() throws IOException {
+    final String bucketName = "example";
+    final String sourceDirectoryName = "alpha";
+    final String targetDirectoryName = "bravo";
+    final String fileName1 = "hello.txt";
+    final String fileName2 = "nested/world.txt";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    for (String fileName : asList(fileName1, fileName2)) {
+      client.putObject(
+          PutObjectRequest.builder().bucket(bucketName)
+              .key(sourceDirectoryName + S3FileSystemProvider.SEPARATOR + fileName).build(),
+          RequestBody.fromString(fileName, StandardCharsets.UTF_8));
+    }
+
+    Files.move(
+        Paths.get(URI.create(
+            format("%s://%s/%s/", S3FileSystemProvider.SCHEME, bucketName, sourceDirectoryName))),
+        Paths.get(URI.create(
+            format("%s://%s/%s/", S3FileSystemProvider.SCHEME, bucketName, targetDirectoryName))));
+
+    for (String fileName : asList(fileName1, fileName2)) {
+      String text;
+      try (InputStream in = client.getObject(GetObjectRequest.builder().bucket(bucketName)
+          .key(targetDirectoryName + S3FileSystemProvider.SEPARATOR + fileName).build())) {
+        text = new String(MoreByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+      }
+      assertThat(text, is(fileName));
+    }
+
+    assertThat(Files.exists(Paths.get(URI.create(format("%s://%s/%s/%s",
+        S3FileSystemProvider.SCHEME, bucketName, sourceDirectoryName, fileName1)))), is(false));
+  }
+
+  @Test
+  public void deleteDirectoryTest() throws IOException {
+    final String bucketName = "example";
+    final String directoryName = "alpha";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    for (int i = 0; i < 1500; i++) {
+      client.putObject(PutObjectRequest.builder().bucket(bucketName)
+          .key(format("%s/%04d.txt", directoryName, i)).build(), RequestBody.empty());
+    }
+
+    final AtomicInteger deleted = new AtomicInteger(0);
+    final Path directory = Paths.get(
+        URI.create(format("%s://%s/%s/", S3FileSystemProvider.SCHEME, bucketName, directoryName)));
+    ((S3FileSystemProvider) directory.getFileSystem().provider()).deleteDirectory(directory,
+        new S3BulkOperationListener() {
+          @Override
+          public void onObjectDeleted(S3Path path) {
+            deleted.incrementAndGet();
+          }
+        });
+
+    assertThat(deleted.get(), is(1500));
+    assertThat(Files.exists(directory), is(false));
+  }
+
+  @Test
+  public void parallelListingTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    // Directories whose names sort differently in UTF-16 and UTF-8, which S3 lists in, so the
+    // shards split between them
+    final List<String> keys = new ArrayList<>();
+    for (String directory : asList("a", "z", "\uFF01", "\uD83D\uDE00")) {
+      for (int i = 0; i < 25; i++)
+        keys.add(format("data/%s/%02d.txt", directory, i));
+    }
+    for (String key : keys) {
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+          RequestBody.empty());
+    }
+    keys.sort(S3KeyListing::compareKeys);
+
+    final S3FileSystem fileSystem = (S3FileSystem) Paths
+        .get(URI.create(format("%s://%s/", S3FileSystemProvider.SCHEME, bucketName)))
+        .getFileSystem();
+
+    List<String> ordered;
+    try (Stream<S3Object> objects = S3ParallelLister.list(fileSystem, "data/", true)) {
+      ordered = objects.map(S3Object::key).collect(toList());
+    }
+    assertThat(ordered, is(keys));
+
+    Set<String> unordered;
+    try (Stream<S3Object> objects = S3ParallelLister.list(fileSystem, "data/", false)) {
+      unordered = objects.map(S3Object::key).collect(toSet());
+    }
+    assertThat(unordered, is(new HashSet<>(keys)));
+  }
+
+  @Test(expected = UncheckedIOException.class)
+  public void parallelListingAbandonedTest() throws IOException, InterruptedException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    // One shard with more pages than its queue holds, so its worker must wait for the consumer
+    final List<String> keys = new ArrayList<>();
+    for (int i = 0; i < 2500; i++)
+      keys.add(format("data/a/%04d.txt", i));
+    keys.add("data/b/0000.txt");
+    keys.parallelStream()
+        .forEach(key -> client.putObject(
+            PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+            RequestBody.empty()));
+
+    final S3FileSystem fileSystem = (S3FileSystem) Paths
+        .get(URI.create(format("%s://%s/", S3FileSystemProvider.SCHEME, bucketName)))
+        .getFileSystem();
+
+    // Stop reading without closing the stream, and wait out the idle timeout
+    final Stream<S3Object> objects =
+        S3ParallelLister.list(fileSystem, "data/", true, Duration.ofMillis(250L));
+    Thread.sleep(2000L);
+
+    // The worker gave up, so the listing failed
+    objects.iterator().hasNext();
+  }
+
+  @Test
+  public void walkFileTreeTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    for (String key : asList("alpha/a.txt", "alpha/bravo/b.txt", "alpha/bravo/charlie/c.txt",
+        "alpha/bravo-d.txt", "alpha/delta/")) {
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+          RequestBody.empty());
+    }
+
+    final List<String> events = new ArrayList<>();
+    final Path start =
+        Paths.get(URI.create(format("%s://%s/alpha/", S3FileSystemProvider.SCHEME, bucketName)));
+    ((S3FileSystemProvider) start.getFileSystem().provider()).walkFileTree(start,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            events.add("pre " + dir);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            events.add("file " + file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+            events.add("post " + dir);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    assertThat(events,
+        is(asList("pre /alpha/", "file /alpha/a.txt", "file /alpha/bravo-d.txt",
+            "pre /alpha/bravo/", "file /alpha/bravo/b.txt", "pre /alpha/bravo/charlie/",
+            "file /alpha/bravo/charlie/c.txt", "post /alpha/bravo/charlie/", "post /alpha/bravo/",
+            "pre /alpha/delta/", "post /alpha/delta/", "post /alpha/")));
+  }
+
+  @Test
+  public void globDirectoryStreamTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    for (String key : asList("logs/2024-04-30.gz", "logs/2024-05-01.gz", "logs/2024-05-02.gz",
+        "logs/2024-05-02.txt")) {
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+          RequestBody.empty());
+    }
+
+    final Path dir =
+        Paths.get(URI.create(format("%s://%s/logs/", S3FileSystemProvider.SCHEME, bucketName)));
+    final List<String> names = new ArrayList<>();
+    try (DirectoryStream<Path> entries = ((S3FileSystemProvider) dir.getFileSystem().provider())
+        .newDirectoryStream(dir, "2024-05-*.gz")) {
+      for (Path entry : entries)
+        names.add(entry.getFileName().toString());
+    }
+
+    assertThat(names, is(asList("2024-05-01.gz", "2024-05-02.gz")));
+  }
+
+  @Test
+  public void metadataCacheTest() throws IOException {
+    final String bucketName = "example";
+    final String key = "hello.txt";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+        RequestBody.fromString("Hello", StandardCharsets.UTF_8));
+
+    final Path path =
+        Paths.get(URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, key)));
+    final S3FileSystem fileSystem = (S3FileSystem) path.getFileSystem();
+    fileSystem.setMetadataCache(Duration.ofMinutes(1L), S3FileSystem.DEFAULT_METADATA_CACHE_SIZE);
+
+    assertThat(Files.size(path), is(5L));
+    assertThat(Files.size(path), is(5L));
+
+    // Writing through the file system invalidates the cached metadata
+    Files.write(path, "Hello, world!".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(Files.size(path), is(13L));
+    assertThat(fileSystem.getMetadataCacheStatistics().getHitCount(), is(1L));
+    assertThat(fileSystem.getMetadataCacheStatistics().getMissCount(), is(2L));
+  }
+
+  @Test
+  public void negativeLookupCacheTest() throws IOException, InterruptedException {
+    final String bucketName = "example";
+    final String key = "hello.txt";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    final Path path =
+        Paths.get(URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, key)));
+    final S3FileSystem fileSystem = (S3FileSystem) path.getFileSystem();
+    fileSystem.setNegativeLookupCache(Duration.ofMinutes(1L),
+        S3FileSystem.DEFAULT_NEGATIVE_LOOKUP_CACHE_SIZE);
+
+    assertThat(Files.exists(path), is(false));
+
+    // Objects created by other clients are not seen while the missing key is remembered
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+        RequestBody.fromString("Hello", StandardCharsets.UTF_8));
+
+    assertThat(Files.exists(path), is(false));
+
+    // Writing through the file system forgets the missing key
+    Files.write(path, "Hello, world!".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(Files.exists(path), is(true));
+    assertThat(Files.size(path), is(13L));
+
+    // Missing keys are forgotten once they expire
+    final Path other = path.resolveSibling("other.txt");
+    fileSystem.setNegativeLookupCache(Duration.ofMillis(200L),
+        S3FileSystem.DEFAULT_NEGATIVE_LOOKUP_CACHE_SIZE);
+
+    assertThat(Files.exists(other), is(false));
+
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("other.txt").build(),
+        RequestBody.fromString("Other", StandardCharsets.UTF_8));
+    Thread.sleep(500L);
+
+    assertThat(Files.exists(other), is(true));
+  }
+
+  @Test
+  public void existenceIndexTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    for (int i = 0; i < 20; i++) {
+      final String key = format("data/%02d.txt", i);
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+          RequestBody.fromString(key, StandardCharsets.UTF_8));
+    }
+
+    final Path directory =
+        Paths.get(URI.create(format("%s://%s/data/", S3FileSystemProvider.SCHEME, bucketName)));
+    final S3FileSystem fileSystem = (S3FileSystem) directory.getFileSystem();
+    fileSystem.createExistenceIndex(directory);
+
+    for (int i = 0; i < 20; i++)
+      assertThat(Files.exists(directory.resolve(format("%02d.txt", i))), is(true));
+    assertThat(Files.exists(directory.resolve("20.txt")), is(false));
+
+    // Objects created by other clients are not seen until the index is rebuilt
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("data/20.txt").build(),
+        RequestBody.fromString("data/20.txt", StandardCharsets.UTF_8));
+
+    assertThat(Files.exists(directory.resolve("20.txt")), is(false));
+
+    // Writing through the file system adds the key to the index
+    Files.write(directory.resolve("21.txt"), "data/21.txt".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(Files.exists(directory.resolve("21.txt")), is(true));
+
+    fileSystem.createExistenceIndex(directory);
+
+    assertThat(Files.exists(directory.resolve("20.txt")), is(true));
+    assertThat(fileSystem.dropExistenceIndex(directory), is(true));
+    assertThat(fileSystem.dropExistenceIndex(directory), is(false));
+  }
+
+  @Test
+  public void listingIndexTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    for (String key : asList("data/a.txt", "data/b.txt", "data/sub/c.txt")) {
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+          RequestBody.fromString(key, StandardCharsets.UTF_8));
+    }
+
+    final Path directory =
+        Paths.get(URI.create(format("%s://%s/data/", S3FileSystemProvider.SCHEME, bucketName)));
+    final Path subdirectory =
+        Paths.get(URI.create(format("%s://%s/data/sub/", S3FileSystemProvider.SCHEME, bucketName)));
+    final S3FileSystem fileSystem = (S3FileSystem) directory.getFileSystem();
+    final Path indexDirectory = Files.createTempDirectory("listing");
+    final Path indexFile = indexDirectory.resolve("data.idx");
+    try {
+      fileSystem.attachListingIndex(directory, indexFile);
+
+      assertThat(Files.exists(indexFile), is(true));
+      assertThat(list(directory),
+          is(new HashSet<>(asList("/data/a.txt", "/data/b.txt", "/data/sub/"))));
+
+      // Objects created by other clients are not seen until the index is refreshed
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key("data/z.txt").build(),
+          RequestBody.fromString("data/z.txt", StandardCharsets.UTF_8));
+
+      assertThat(list(directory),
+          is(new HashSet<>(asList("/data/a.txt", "/data/b.txt", "/data/sub/"))));
+
+      // Attaching the same file again loads the index instead of listing
+      assertThat(fileSystem.detachListingIndex(directory), is(true));
+      fileSystem.attachListingIndex(directory, indexFile);
+
+      assertThat(list(directory),
+          is(new HashSet<>(asList("/data/a.txt", "/data/b.txt", "/data/sub/"))));
+
+      fileSystem.refreshListingIndex(directory);
+
+      assertThat(list(directory),
+          is(new HashSet<>(asList("/data/a.txt", "/data/b.txt", "/data/sub/", "/data/z.txt"))));
+
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key("data/sub/d.txt").build(),
+          RequestBody.fromString("data/sub/d.txt", StandardCharsets.UTF_8));
+
+      assertThat(list(subdirectory), is(new HashSet<>(asList("/data/sub/c.txt"))));
+
+      fileSystem.refreshListingIndex(directory, asList(subdirectory));
+
+      assertThat(list(subdirectory),
+          is(new HashSet<>(asList("/data/sub/c.txt", "/data/sub/d.txt"))));
+
+      // Writing through the file system makes the index stale, so S3 is listed again
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key("data/c.txt").build(),
+          RequestBody.fromString("data/c.txt", StandardCharsets.UTF_8));
+      Files.write(directory.resolve("y.txt"), "data/y.txt".getBytes(StandardCharsets.UTF_8));
+
+      assertThat(list(directory), is(new HashSet<>(asList("/data/a.txt", "/data/b.txt",
+          "/data/c.txt", "/data/sub/", "/data/y.txt", "/data/z.txt"))));
+
+      assertThat(fileSystem.detachListingIndex(directory), is(true));
+      assertThat(fileSystem.detachListingIndex(directory), is(false));
+    } finally {
+      Files.deleteIfExists(indexFile);
+      Files.delete(indexDirectory);
+    }
+  }
+
+  @Test
+  public void directoryTreeCacheTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    for (String key : asList("tree/a.txt", "tree/b/c.txt", "tree/b/d/e.txt",
+        "tree/\uFF01.txt", "tree/\uD83D\uDE00.txt")) {
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+          RequestBody.fromString(key, StandardCharsets.UTF_8));
+    }
+
+    final Path directory =
+        Paths.get(URI.create(format("%s://%s/tree/", S3FileSystemProvider.SCHEME, bucketName)));
+    final Path subdirectory =
+        Paths.get(URI.create(format("%s://%s/tree/b/", S3FileSystemProvider.SCHEME, bucketName)));
+    final S3FileSystem fileSystem = (S3FileSystem) directory.getFileSystem();
+    fileSystem.cacheDirectoryTree(directory);
+
+    // Objects created by other clients are not seen until the cache is refreshed
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("tree/b/f.txt").build(),
+        RequestBody.fromString("tree/b/f.txt", StandardCharsets.UTF_8));
+
+    final List<String> files = new ArrayList<>();
+    ((S3FileSystemProvider) directory.getFileSystem().provider()).walkFileTree(directory,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            files.add(file + " " + attrs.size());
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    assertThat(files, is(asList("/tree/a.txt 10", "/tree/b/c.txt 12", "/tree/b/d/e.txt 14",
+        "/tree/\uFF01.txt 12", "/tree/\uD83D\uDE00.txt 13")));
+
+    fileSystem.refreshListingIndex(directory);
+    assertThat(list(subdirectory),
+        is(new HashSet<>(asList("/tree/b/c.txt", "/tree/b/d/"))));
+
+    fileSystem.refreshListingIndex(directory, asList(subdirectory));
+    assertThat(list(subdirectory),
+        is(new HashSet<>(asList("/tree/b/c.txt", "/tree/b/d/", "/tree/b/f.txt"))));
+    assertThat(fileSystem.detachListingIndex(directory), is(true));
+  }
+
+  @Test
+  public void inventoryListingTest() throws IOException {
+    final String bucketName = "example";
+    final String inventoryBucketName = "inventory";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+    client.createBucket(CreateBucketRequest.builder().bucket(inventoryBucketName).build());
+
+    // The report lists objects that were never written, so the listing must come from it
+    final Path inventory = Paths.get(URI.create(
+        format("%s://%s/example/config/", S3FileSystemProvider.SCHEME, inventoryBucketName)));
+    Files.write(inventory.resolve("data/1.csv.gz"),
+        gzip("\"example\",\"data%2Fb.txt\",\"2\",\"2024-05-01T00:00:00.000Z\",\"b\"\n"
+            + "\"example\",\"data%2Fa+b.txt\",\"3\",\"2024-05-01T00:00:00.000Z\",\"ab\"\n"
+            + "\"example\",\"other%2Fc.txt\",\"4\",\"2024-05-01T00:00:00.000Z\",\"c\"\n"));
+    Files.write(inventory.resolve("data/2.csv.gz"),
+        gzip("\"example\",\"data%2Fsub%2Fd.txt\",\"5\",\"2024-05-01T00:00:00.000Z\",\"d\"\n"
+            + "\"example\",\"data%2Fb.txt\",\"2\",\"2024-05-01T00:00:00.000Z\",\"b\"\n"));
+    final Path manifest = inventory.resolve("2024-05-02T00-00Z/manifest.json");
+    Files.write(manifest,
+        ("{\"sourceBucket\":\"example\",\"destinationBucket\":\"arn:aws:s3:::inventory\","
+            + "\"version\":\"2016-11-30\",\"fileFormat\":\"CSV\","
+            + "\"fileSchema\":\"Bucket, Key, Size, LastModifiedDate, ETag\",\"files\":["
+            + "{\"key\":\"example/config/data/1.csv.gz\",\"size\":1},"
+            + "{\"key\":\"example/config/data/2.csv.gz\",\"size\":1}]}")
+                .getBytes(StandardCharsets.UTF_8));
+
+    final Path directory =
+        Paths.get(URI.create(format("%s://%s/data/", S3FileSystemProvider.SCHEME, bucketName)));
+    final S3FileSystem fileSystem = (S3FileSystem) directory.getFileSystem();
+    fileSystem.attachInventoryListing(directory, manifest, false);
+
+    assertThat(list(directory),
+        is(new HashSet<>(asList("/data/a b.txt", "/data/b.txt", "/data/sub/"))));
+
+    // With the overlay, objects after the last key in the report are listed from S3
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("data/z.txt").build(),
+        RequestBody.fromString("data/z.txt", StandardCharsets.UTF_8));
+    fileSystem.attachInventoryListing(directory, manifest, true);
+
+    final List<String> files = new ArrayList<>();
+    ((S3FileSystemProvider) directory.getFileSystem().provider()).walkFileTree(directory,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            files.add(file + " " + attrs.size());
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    assertThat(files, is(asList("/data/a b.txt 3", "/data/b.txt 2", "/data/sub/d.txt 5",
+        "/data/z.txt 10")));
+  }
+
+  @Test(expected = IOException.class)
+  public void inventoryListingWrongBucketTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    final Path manifest = Paths.get(URI.create(
+        format("%s://%s/inventory/manifest.json", S3FileSystemProvider.SCHEME, bucketName)));
+    Files.write(manifest,
+        ("{\"sourceBucket\":\"other\",\"fileFormat\":\"CSV\",\"fileSchema\":\"Key\","
+            + "\"files\":[]}").getBytes(StandardCharsets.UTF_8));
+
+    ((S3FileSystem) manifest.getFileSystem()).attachInventoryListing(manifest.getRoot(), manifest,
+        false);
+  }
+
+  @Test
+  public void bulkReadAttributesTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    final List<Path> paths = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      final String key = format("data/%02d.txt", i);
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+          RequestBody.fromString(key, StandardCharsets.UTF_8));
+      paths.add(Paths
+          .get(URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, key))));
+    }
+    for (String key : asList("data/40.txt", "data/", "other/")) {
+      paths.add(Paths
+          .get(URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, key))));
+    }
+
+    final S3FileSystem fileSystem = (S3FileSystem) paths.get(0).getFileSystem();
+    final Map<Path, Optional<BasicFileAttributes>> attributes = fileSystem.readAttributes(paths);
+
+    assertThat(attributes.size(), is(43));
+    for (int i = 0; i < 40; i++)
+      assertThat(attributes.get(paths.get(i)).get().size(), is(11L));
+    assertThat(attributes.get(paths.get(40)).isPresent(), is(false));
+    assertThat(attributes.get(paths.get(41)).get().isDirectory(), is(true));
+    assertThat(attributes.get(paths.get(42)).isPresent(), is(false));
+  }
+
+  @Test
+  public void bulkReadAttributesMultiByteKeysTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    // U+FF01 sorts before U+1F600 in S3, but after its surrogates in UTF-16
+    final List<Path> paths = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      final String key = format("data/%s%02d.txt", i % 2 == 0 ? "\uFF01" : "\uD83D\uDE00", i);
+      if (i % 4 != 3) {
+        client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+            RequestBody.fromString("data", StandardCharsets.UTF_8));
+      }
+      paths.add(Paths
+          .get(URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, key))));
+    }
+
+    final S3FileSystem fileSystem = (S3FileSystem) paths.get(0).getFileSystem();
+    final Map<Path, Optional<BasicFileAttributes>> attributes = fileSystem.readAttributes(paths);
+
+    assertThat(attributes.size(), is(40));
+    for (int i = 0; i < 40; i++)
+      assertThat(attributes.get(paths.get(i)).isPresent(), is(i % 4 != 3));
+  }
+
+  @Test
+  public void fileStoreTest() throws IOException, InterruptedException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    for (String key : asList("data/a.txt", "data/sub/b.txt", "other/c.txt")) {
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key(key).build(),
+          RequestBody.fromString(key, StandardCharsets.UTF_8));
+    }
+
+    final Path path = Paths
+        .get(URI.create(format("%s://%s/data/a.txt", S3FileSystemProvider.SCHEME, bucketName)));
+    final S3FileSystem fileSystem = (S3FileSystem) path.getFileSystem();
+    final FileStore store = Files.getFileStore(path);
+
+    assertThat(store.name(), is(bucketName));
+    assertThat(store.type(), is(S3FileStore.TYPE));
+    assertThat(store.getTotalSpace(), is(Long.MAX_VALUE));
+    assertThat(store.getAttribute("s3:objectCount"), is((Object) 3L));
+    assertThat(store.getAttribute("s3:usedSpace"), is((Object) 35L));
+    assertThat(fileSystem.getFileStores().iterator().next(), is(store));
+
+    assertThat(fileSystem.getStorageUsage(fileSystem.getPath("/data/sub/")),
+        is(new StorageUsage(1L, 14L)));
+    assertThat(fileSystem.getStorageUsage(fileSystem.getPath("/data/")),
+        is(new StorageUsage(2L, 24L)));
+    assertThat(fileSystem.getStorageUsage(fileSystem.getPath("/")),
+        is(new StorageUsage(3L, 35L)));
+
+    // The usage is cached until the TTL changes or expires
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("d.txt").build(),
+        RequestBody.fromString("d.txt", StandardCharsets.UTF_8));
+
+    assertThat(((S3FileStore) store).getObjectCount(), is(3L));
+
+    ((S3FileStore) store).setUsageCacheTtl(Duration.ZERO);
+
+    // Concurrent callers share one listing and see the same usage
+    final List<StorageUsage> usages = new ArrayList<>();
+    final List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      threads.add(new Thread(() -> {
+        try {
+          StorageUsage usage = ((S3FileStore) store).getUsage();
+          synchronized (usages) {
+            usages.add(usage);
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }));
+    }
+    for (Thread thread : threads)
+      thread.start();
+    for (Thread thread : threads)
+      thread.join();
+
+    assertThat(usages.size(), is(8));
+    for (StorageUsage usage : usages)
+      assertThat(usage, is(new StorageUsage(4L, 40L)));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void fileStoreUnsupportedAttributeTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    Files.getFileStore(
+        Paths.get(URI.create(format("%s://%s/", S3FileSystemProvider.SCHEME, bucketName))))
+        .getAttribute("s3:capacity");
+  }
+
+  @Test
+  public void watchServiceTest() throws IOException, InterruptedException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("logs/a.txt").build(),
+        RequestBody.fromString("a", StandardCharsets.UTF_8));
+
+    final Path directory =
+        Paths.get(URI.create(format("%s://%s/logs/", S3FileSystemProvider.SCHEME, bucketName)));
+    final S3FileSystem fileSystem = (S3FileSystem) directory.getFileSystem();
+
+    final Set<String> events = new HashSet<>();
+    try (WatchService watcher = fileSystem.newWatchService(Duration.ofMillis(100L))) {
+      directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE);
+
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key("logs/b.txt").build(),
+          RequestBody.fromString("b", StandardCharsets.UTF_8));
+      Files.delete(directory.resolve("a.txt"));
+
+      while (events.size() < 2) {
+        WatchKey key = watcher.poll(10L, TimeUnit.SECONDS);
+        if (key == null)
+          break;
+        for (WatchEvent<?> event : key.pollEvents())
+          events.add(event.kind().name() + " " + event.context());
+        key.reset();
+      }
+    }
+
+    assertThat(events, is(new HashSet<>(asList("ENTRY_CREATE b.txt", "ENTRY_DELETE a.txt"))));
+  }
+
+  @Test
+  public void watchServiceModifyTest() throws IOException, InterruptedException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("logs/a.txt").build(),
+        RequestBody.fromString("a", StandardCharsets.UTF_8));
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("logs/b.txt").build(),
+        RequestBody.fromString("b", StandardCharsets.UTF_8));
+
+    final Path directory =
+        Paths.get(URI.create(format("%s://%s/logs/", S3FileSystemProvider.SCHEME, bucketName)));
+    final S3FileSystem fileSystem = (S3FileSystem) directory.getFileSystem();
+
+    final Set<String> events = new HashSet<>();
+    try (WatchService watcher = fileSystem.newWatchService(Duration.ofMillis(100L))) {
+      directory.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY);
+
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key("logs/a.txt").build(),
+          RequestBody.fromString("aa", StandardCharsets.UTF_8));
+      client.putObject(PutObjectRequest.builder().bucket(bucketName).key("logs/c.txt").build(),
+          RequestBody.fromString("c", StandardCharsets.UTF_8));
+
+      WatchKey key = watcher.poll(10L, TimeUnit.SECONDS);
+      if (key != null) {
+        for (WatchEvent<?> event : key.pollEvents())
+          events.add(event.kind().name() + " " + event.context());
+        key.reset();
+      }
+    }
+
+    // The new object is not reported, since only modifications were registered
+    assertThat(events, is(new HashSet<>(asList("ENTRY_MODIFY a.txt"))));
+  }
+
+  @Test
+  public void watchServiceAppendOnlyTest() throws IOException, InterruptedException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    client.putObject(
+        PutObjectRequest.builder().bucket(bucketName).key("logs/2024-05-01.gz").build(),
+        RequestBody.fromString("1", StandardCharsets.UTF_8));
+
+    final Path directory =
+        Paths.get(URI.create(format("%s://%s/logs/", S3FileSystemProvider.SCHEME, bucketName)));
+    final S3FileSystem fileSystem = (S3FileSystem) directory.getFileSystem();
+
+    final List<String> events = new ArrayList<>();
+    try (WatchService watcher = fileSystem.newWatchService(Duration.ofMillis(100L))) {
+      directory.register(watcher,
+          new WatchEvent.Kind<?>[] {StandardWatchEventKinds.ENTRY_CREATE},
+          S3WatchEventModifier.APPEND_ONLY);
+
+      // Keys before the last known key are not noticed in append-only mode
+      client.putObject(
+          PutObjectRequest.builder().bucket(bucketName).key("logs/2024-04-30.gz").build(),
+          RequestBody.fromString("0", StandardCharsets.UTF_8));
+      client.putObject(
+          PutObjectRequest.builder().bucket(bucketName).key("logs/2024-05-02.gz").build(),
+          RequestBody.fromString("2", StandardCharsets.UTF_8));
+
+      while (events.size() < 1) {
+        WatchKey key = watcher.poll(10L, TimeUnit.SECONDS);
+        if (key == null)
+          break;
+        for (WatchEvent<?> event : key.pollEvents())
+          events.add(event.kind().name() + " " + event.context());
+        key.reset();
+      }
+
+      client.putObject(
+          PutObjectRequest.builder().bucket(bucketName).key("logs/2024-05-03.gz").build(),
+          RequestBody.fromString("3", StandardCharsets.UTF_8));
+
+      while (events.size() < 2) {
+        WatchKey key = watcher.poll(10L, TimeUnit.SECONDS);
+        if (key == null)
+          break;
+        for (WatchEvent<?> event : key.pollEvents())
+          events.add(event.kind().name() + " " + event.context());
+        key.reset();
+      }
+    }
+
+    assertThat(events,
+        is(asList("ENTRY_CREATE 2024-05-02.gz", "ENTRY_CREATE 2024-05-03.gz")));
+  }
+
+  @Test
+  public void watchServiceOverflowTest() throws IOException, InterruptedException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    final Path directory =
+        Paths.get(URI.create(format("%s://%s/logs/", S3FileSystemProvider.SCHEME, bucketName)));
+    final S3FileSystem fileSystem = (S3FileSystem) directory.getFileSystem();
+
+    final List<WatchEvent<?>> events = new ArrayList<>();
+    try (WatchService watcher = fileSystem.newWatchService(Duration.ofMillis(100L))) {
+      directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+
+      for (int i = 0; i < 600; i++) {
+        client.putObject(
+            PutObjectRequest.builder().bucket(bucketName).key(format("logs/%03d.txt", i)).build(),
+            RequestBody.fromString("x", StandardCharsets.UTF_8));
+      }
+
+      // Events pile up on the key until they are taken, so let a poll see every object
+      WatchKey key = watcher.poll(10L, TimeUnit.SECONDS);
+      Thread.sleep(1000L);
+      if (key != null)
+        events.addAll(key.pollEvents());
+    }
+
+    assertThat(events.size(), is(513));
+    assertThat(events.get(511).kind(), is((Object) StandardWatchEventKinds.ENTRY_CREATE));
+    assertThat(events.get(512).kind(), is((Object) StandardWatchEventKinds.OVERFLOW));
+    assertThat(events.get(512).count(), is(88));
+    assertThat(events.get(512).context(), is((Object) null));
+  }
+
+  @Test
+  public void uriRoundTripTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+
+    final Path root =
+        Paths.get(URI.create(format("%s://%s/", S3FileSystemProvider.SCHEME, bucketName)));
+    for (String key : S3PathTest.URI_KEYS) {
+      final Path path = root.resolve(key);
+
+      assertThat(key, Paths.get(path.toUri()), is(path));
+      assertThat(key, Paths.get(path.toUri()).toString(), is(path.toString()));
+    }
+  }
+
   @Test(expected = NoSuchKeyException.class)
   public void deleteTest() throws IOException {
     final String bucketName = "example";
@@ -215,4 +1147,151 @@ public class S3FileSystemProviderTest {
 
     client.headObject(HeadObjectRequest.builder().bucket(bucketName).key(key).build());
   }
+
+  @Test
+  public void fileSystemCreationTest() throws Exception {
+    final int bucketCount = 4;
+    final int threadCount = 32;
+
+    for (int i = 0; i < bucketCount; i++)
+      client.createBucket(CreateBucketRequest.builder().bucket("bucket" + i).build());
+
+    // The provider saves each region it looks up in the cache, so count saves
+    final AtomicInteger lookups = new AtomicInteger(0);
+    S3FileSystemProvider.setBucketRegionCache(new BucketRegionCache() {
+      @Override
+      public void put(String bucket, String region) {
+        lookups.incrementAndGet();
+        super.put(bucket, region);
+      }
+    });
+
+    // The provider gets a new builder for each client it builds, so count builders
+    final AtomicInteger builds = new AtomicInteger(0);
+    S3FileSystemProvider.setDefaultClientBuilderSupplier(() -> {
+      builds.incrementAndGet();
+      return clientBuilder;
+    });
+    builds.set(0);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      final List<Future<FileSystem>> fileSystems = new ArrayList<>();
+      for (int i = 0; i < threadCount; i++) {
+        final String bucketName = "bucket" + (i % bucketCount);
+        fileSystems.add(executor.submit(() -> {
+          start.await();
+          return Paths.get(URI.create(
+              format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, "hello.txt")))
+              .getFileSystem();
+        }));
+      }
+      start.countDown();
+
+      for (int i = 0; i < threadCount; i++)
+        assertThat(fileSystems.get(i).get(),
+            sameInstance(fileSystems.get(i % bucketCount).get()));
+    } finally {
+      executor.shutdownNow();
+      S3FileSystemProvider.setBucketRegionCache(new BucketRegionCache());
+    }
+
+    // One region lookup per bucket, and one client for the one region they share
+    assertThat(lookups.get(), is(bucketCount));
+    assertThat(builds.get(), is(1));
+  }
+
+  @Test
+  public void staleSavedRegionTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("data/a.txt").build(),
+        RequestBody.fromString("alpha", StandardCharsets.UTF_8));
+
+    // An earlier run saved a region the bucket is not in
+    final Path file = Files.createTempFile("regions", ".properties");
+    try {
+      Files.write(file, (bucketName + "=eu-central-1\n").getBytes(StandardCharsets.ISO_8859_1));
+      S3FileSystemProvider.setBucketRegionCacheFile(file);
+
+      // The first request is a listing, not a HEAD
+      final Path directory = Paths.get(
+          URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, "data/")));
+      assertThat(list(directory), is(new HashSet<>(asList("/data/a.txt"))));
+
+      assertThat(new BucketRegionCache(file).get(bucketName), is(localstack.getRegion()));
+    } finally {
+      S3FileSystemProvider.setBucketRegionCacheFile(null);
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void getPathCacheTest() throws IOException {
+    client.createBucket(CreateBucketRequest.builder().bucket("example").build());
+
+    final URI uri =
+        URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, "example", "hello.txt"));
+
+    final Path path = Paths.get(uri);
+    assertThat(Paths.get(uri), sameInstance(path));
+
+    path.getFileSystem().close();
+
+    // The cached path must not outlive its file system
+    try {
+      Paths.get(uri);
+      fail("cached path of closed file system: " + uri);
+    } catch (ClosedFileSystemException e) {
+      // Good
+    }
+  }
+
+  @Test
+  public void listedAttributesTest() throws IOException {
+    final String bucketName = "example";
+
+    client.createBucket(CreateBucketRequest.builder().bucket(bucketName).build());
+    client.putObject(PutObjectRequest.builder().bucket(bucketName).key("data/a.txt").build(),
+        RequestBody.fromString("alpha", StandardCharsets.UTF_8));
+    final String eTag = client
+        .headObject(HeadObjectRequest.builder().bucket(bucketName).key("data/a.txt").build())
+        .eTag();
+
+    final Path directory = Paths.get(
+        URI.create(format("%s://%s/%s", S3FileSystemProvider.SCHEME, bucketName, "data/")));
+    final Path file;
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+      file = entries.iterator().next();
+    }
+
+    // Delete the object behind the file system's back, so a HEAD would fail
+    client.deleteObject(DeleteObjectRequest.builder().bucket(bucketName).key("data/a.txt").build());
+
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    assertThat(attributes.size(), is(5L));
+    assertThat(attributes.fileKey(), is(eTag));
+
+    // A write through the file system makes the listed attributes untrustworthy
+    Files.write(file, "bravo!".getBytes(StandardCharsets.UTF_8));
+
+    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    assertThat(attributes.size(), is(6L));
+  }
+
+  private static byte[] gzip(String text) throws IOException {
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(result)) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+    return result.toByteArray();
+  }
+
+  private static Set<String> list(Path directory) throws IOException {
+    try (Stream<Path> entries = Files.list(directory)) {
+      return entries.map(Path::toString).collect(toSet());
+    }
+  }
 }
@@ -0,0 +1,358 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Before;
+import org.junit.Test;
+import com.sigpwned.aws.sdk.lite.core.auth.AwsCredentials;
+import com.sigpwned.aws.sdk.lite.core.auth.credentials.AwsBasicCredentials;
+import com.sigpwned.aws.sdk.lite.s3.S3Client;
+
+public class S3PathTest {
+  /**
+   * Path strings that exercise parsing: repeated, leading, and trailing separators, surrounding
+   * whitespace, blank elements, the scheme prefix, and directory aliases
+   */
+  private static final List<String> PATH_STRINGS = asList("", "/", "//", "///", " ", " / ", "a",
+      "/a", "a/", "/a/", "a/b", "/a/b", "/a/b/", "a//b", "//a//b//", "/a///b", " a/b", "a/b ",
+      " /a/b/ ", "\t/a/b\n", "a/ /b", "/a/\t/b/", "/ /a", "a/ ", "/a/ /", "s3:/a/b", "s3://a/b",
+      "s3:/", "s3:/a/", "s3:", "./a", "/a/./b", "/a/../b", "a/..", "/..", "../a/", "/a/b/.",
+      "/a/b/..", "..", ".", "/a.b/..c/.d", "/a b/c", "/a/\u00E9/\uD83D\uDE00");
+
+  /**
+   * Keys that need encoding in a URI: spaces, plus signs, percent signs, reserved characters,
+   * non-ASCII characters, and surrogate pairs
+   */
+  /* default */ static final List<String> URI_KEYS = asList("a b", "a+b", "a%20b", "100%",
+      "a b/c+d/", "~user/a*b", "a?b#c", "a;b=c&d", "[x]", "\u00E9", "e\u0301", "\u65E5\u672C",
+      "\uFF01", "\uD83D\uDE00", "dir/\uD83D\uDE00 \uD83D\uDE01.txt");
+
+  public S3FileSystem fileSystem;
+
+  @Before
+  public void setupS3PathTest() {
+    final AwsCredentials credentials = AwsBasicCredentials.of("accessKey", "secretKey");
+    final S3Client client =
+        S3Client.builder().credentialsProvider(() -> credentials).region("us-east-1").build();
+    fileSystem = new S3FileSystem(new S3FileSystemProvider(), client, "example");
+  }
+
+  @Test
+  public void canonicalPathTest() {
+    for (String s : PATH_STRINGS) {
+      final S3Path parsed = S3Path.getPath(fileSystem, s);
+      final S3Path canonical = S3Path.getCanonicalPath(fileSystem, s);
+
+      assertThat(s, canonical.toString(), is(parsed.toString()));
+      assertThat(s, canonical, is(parsed));
+      assertThat(s, canonical.hashCode(), is(parsed.hashCode()));
+      assertThat(s, canonical.isAbsolute(), is(parsed.isAbsolute()));
+      assertThat(s, canonical.isDirectory(), is(parsed.isDirectory()));
+      assertThat(s, canonical.getNameCount(), is(parsed.getNameCount()));
+    }
+  }
+
+  @Test
+  public void pathForKeyTest() {
+    for (String key : asList("a", "a/b", "a/b/", "a//b", " a", "a ", "a/ /b", "s3:/a", "\u00E9")) {
+      assertThat(key, fileSystem.getPathForKey(key).toString(),
+          is(S3Path.getPath(fileSystem, "/" + key).toString()));
+      assertThat(key, fileSystem.getPathForListedKey(key).toString(),
+          is(S3Path.getPath(fileSystem, key).toString()));
+    }
+  }
+
+  @Test
+  public void memoizedFormsTest() {
+    for (String s : PATH_STRINGS) {
+      final S3Path path = S3Path.getPath(fileSystem, s);
+      final S3Path real = path.toRealPath();
+
+      assertThat(s, path.toRealPath() == real, is(true));
+      assertThat(s, real.toRealPath() == real, is(true));
+      assertThat(s, path.getKey(), is(expectedKey(path)));
+      assertThat(s, path.getKey(), is(path.getKey()));
+      assertThat(s, path.hashCode(), is(path.hashCode()));
+      assertThat(s, path.hashCode(), is(S3Path.getPath(fileSystem, s).hashCode()));
+    }
+    for (String s : asList("/example", "/example/", "/example/a", "/examples/a", "/a/example")) {
+      final S3Path path = S3Path.getPath(fileSystem, s);
+      assertThat(s, path.getKey(), is(expectedKey(path)));
+    }
+  }
+
+  @Test
+  public void equalsAndHashCodeTest() {
+    for (String s : PATH_STRINGS) {
+      for (String t : PATH_STRINGS) {
+        final S3Path a = S3Path.getPath(fileSystem, s);
+        final S3Path b = S3Path.getPath(fileSystem, t);
+        final boolean expected = a.toRealPath().toString().equals(b.toRealPath().toString());
+
+        assertThat(s + " " + t, a.equals(b), is(expected));
+        assertThat(s + " " + t, b.equals(a), is(expected));
+        if (expected)
+          assertThat(s + " " + t, a.hashCode(), is(b.hashCode()));
+      }
+    }
+  }
+
+  @Test
+  public void collectionsTest() {
+    final List<String> forms = asList("/a/b", "a/b", "/a/./b", "//a//b", " /a/b ", "/a/c/../b");
+    final Set<Path> hashed = new HashSet<>();
+    final Set<Path> sorted = new TreeSet<>();
+    for (String s : forms) {
+      hashed.add(S3Path.getPath(fileSystem, s));
+      sorted.add(S3Path.getPath(fileSystem, s));
+    }
+
+    assertThat(hashed.size(), is(1));
+    assertThat(sorted.size(), is(1));
+    for (String s : forms) {
+      assertThat(s, hashed.contains(S3Path.getPath(fileSystem, s)), is(true));
+      assertThat(s, sorted.contains(S3Path.getPath(fileSystem, s)), is(true));
+    }
+    assertThat(hashed.contains(S3Path.getPath(fileSystem, "/a/b/")), is(false));
+    assertThat(sorted.contains(S3Path.getPath(fileSystem, "/a/b/")), is(false));
+  }
+
+  @Test
+  public void listedAttributesTest() {
+    for (String s : PATH_STRINGS) {
+      final S3Path path = S3Path.getPath(fileSystem, s);
+      final S3Path listed = path.withListedAttributes(S3BasicFileAttributes.DIRECTORY);
+
+      assertThat(s, listed, is(path));
+      assertThat(s, listed.hashCode(), is(path.hashCode()));
+      assertThat(s, listed.getKey(), is(path.getKey()));
+      assertThat(s, listed.toString(), is(path.toString()));
+      assertThat(s, listed.listedAttributes() == S3BasicFileAttributes.DIRECTORY, is(true));
+    }
+  }
+
+  @Test
+  public void listedAttributesInvalidatedTest() {
+    final S3Path listed = S3Path.getPath(fileSystem, "/a/b.txt")
+        .withListedAttributes(S3BasicFileAttributes.DIRECTORY);
+
+    // Any change this file system makes might have been to this object
+    fileSystem.invalidateKey("a/c.txt");
+    assertThat(listed.listedAttributes(), is(nullValue()));
+
+    // A fresh listing is trusted again
+    assertThat(
+        listed.withListedAttributes(S3BasicFileAttributes.DIRECTORY).listedAttributes() != null,
+        is(true));
+  }
+
+  @Test
+  public void elementsTest() {
+    final List<String> strings = new ArrayList<>(PATH_STRINGS);
+    strings.addAll(asList("/a/./b/../c/", "a/ b /c", "/a/ \t /b/ c ", " x /y", "/x/ y"));
+    for (String s : strings) {
+      final S3Path path = S3Path.getPath(fileSystem, s);
+      final List<String> elements = expectedElements(path);
+      final int size = elements.size();
+      final boolean trailing = path.toString().endsWith("/") && size != 0;
+
+      assertThat(s, path.getNameCount(), is(size));
+
+      final List<String> names = new ArrayList<>();
+      for (Path name : path)
+        names.add(name.toString());
+      final List<String> expectedNames = new ArrayList<>();
+      for (int i = 0; i < size; i++)
+        expectedNames.add(expectedSubpath(path, elements, i, i + 1, trailing));
+      assertThat(s, names, is(expectedNames));
+
+      for (int i = 0; i < size; i++) {
+        assertThat(s + " " + i, path.getName(i).toString(),
+            is(expectedSubpath(path, elements, i, i + 1, trailing)));
+        for (int j = i + 1; j <= size; j++) {
+          assertThat(s + " " + i + " " + j, path.subpath(i, j).toString(),
+              is(expectedSubpath(path, elements, i, j, trailing)));
+        }
+      }
+      if (size != 0) {
+        assertThat(s, path.getFileName().toString(),
+            is(S3Path.getPath(fileSystem, elements.get(size - 1) + (trailing ? "/" : ""))
+                .toString()));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void getNameOutOfRangeTest() {
+    S3Path.getPath(fileSystem, "/a// /b/").getName(2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void subpathOutOfRangeTest() {
+    S3Path.getPath(fileSystem, "/a// /b/").subpath(1, 3);
+  }
+
+  @Test
+  public void compareToTest() {
+    for (String s : PATH_STRINGS) {
+      for (String t : PATH_STRINGS) {
+        final S3Path a = S3Path.getPath(fileSystem, s);
+        final S3Path b = S3Path.getPath(fileSystem, t);
+        final int expected =
+            Integer.signum(a.toRealPath().toString().compareTo(b.toRealPath().toString()));
+
+        assertThat(s + " " + t, Integer.signum(a.compareTo(b)), is(expected));
+        assertThat(s + " " + t, a.equals(b), is(expected == 0));
+      }
+    }
+  }
+
+  @Test
+  public void startsWithTest() {
+    for (String s : PATH_STRINGS) {
+      for (String t : PATH_STRINGS) {
+        final S3Path a = S3Path.getPath(fileSystem, s);
+        final S3Path b = S3Path.getPath(fileSystem, t);
+
+        // Before, a path with no elements made subpath throw, so only equal paths matched it
+        final boolean expected = a.equals(b) || a.isAbsolute() == b.isAbsolute()
+            && a.getNameCount() >= b.getNameCount() && (b.getNameCount() == 0 ? b.isAbsolute()
+                : a.subpath(0, b.getNameCount()).equals(b));
+
+        assertThat(s + " " + t, a.startsWith(b), is(expected));
+        assertThat(s + " " + t, a.startsWith(t), is(expected));
+      }
+    }
+  }
+
+  @Test
+  public void startsWithRootTest() {
+    final S3Path root = S3Path.getPath(fileSystem, "/");
+
+    assertThat(S3Path.getPath(fileSystem, "/a/b").startsWith(root), is(true));
+    assertThat(S3Path.getPath(fileSystem, "/a/b/").startsWith("/"), is(true));
+    assertThat(S3Path.getPath(fileSystem, "//a").startsWith("/"), is(true));
+    assertThat(root.startsWith(root), is(true));
+    assertThat(S3Path.getPath(fileSystem, "a/b").startsWith(root), is(false));
+    assertThat(S3Path.getPath(fileSystem, "/a/b").startsWith(""), is(false));
+  }
+
+  @Test
+  public void endsWithTest() {
+    for (String s : PATH_STRINGS) {
+      for (String t : PATH_STRINGS) {
+        final S3Path a = S3Path.getPath(fileSystem, s);
+        final S3Path b = S3Path.getPath(fileSystem, t);
+        final int size = a.getNameCount();
+        final int otherSize = b.getNameCount();
+        final boolean expected = a.equals(b) || size >= otherSize && otherSize != 0
+            && a.subpath(size - otherSize, size).equals(b);
+
+        assertThat(s + " " + t, a.endsWith(b), is(expected));
+        assertThat(s + " " + t, a.endsWith(t), is(expected));
+      }
+    }
+  }
+
+  @Test
+  public void toUriTest() {
+    assertThat(S3Path.getPath(fileSystem, "/").toUri().toString(), is("s3://example/"));
+    assertThat(S3Path.getPath(fileSystem, "/a b/c+d").toUri().toString(),
+        is("s3://example/a%20b/c+d"));
+    assertThat(S3Path.getPath(fileSystem, "/100%/").toUri().toString(),
+        is("s3://example/100%25/"));
+    assertThat(S3Path.getPath(fileSystem, "a/./b/../c").toUri().toString(),
+        is("s3://example/a/c"));
+    assertThat(S3Path.getPath(fileSystem, "/\u00E9/\uD83D\uDE00").toUri().toString(),
+        is("s3://example/%C3%A9/%F0%9F%98%80"));
+  }
+
+  @Test
+  public void toUriRoundTripTest() {
+    for (String key : URI_KEYS) {
+      final S3Path path = S3Path.getPath(fileSystem, "/" + key);
+      final URI uri = path.toUri();
+
+      assertThat(key, uri.getScheme(), is(S3FileSystemProvider.SCHEME));
+      assertThat(key, uri.getAuthority(), is("example"));
+      assertThat(key, uri.getPath(), is("/" + key));
+      assertThat(key, path.toUri() == uri, is(true));
+
+      // The same parse S3FileSystemProvider.getPath(URI) does
+      final S3Path parsed = S3Path.getPath(fileSystem, uri.getScheme() + ":/" + uri.getPath());
+      assertThat(key, parsed, is(path));
+      assertThat(key, parsed.toString(), is(path.toString()));
+      assertThat(key, parsed.getKey(), is(key));
+    }
+  }
+
+  /**
+   * The elements as found before they were indexed: the path split on separators, without blank
+   * elements
+   */
+  private static List<String> expectedElements(S3Path path) {
+    final List<String> result = new ArrayList<>();
+    if (path.toString().equals("/"))
+      return result;
+    for (String element : path.toString().split("/"))
+      if (!element.trim().isEmpty())
+        result.add(element);
+    return result;
+  }
+
+  /**
+   * The subpath as computed before elements were indexed
+   */
+  private String expectedSubpath(S3Path path, List<String> elements, int beginIndex,
+      int endIndex, boolean trailing) {
+    String result = String.join("/", elements.subList(beginIndex, endIndex));
+    if (path.isAbsolute() && beginIndex == 0)
+      result = "/" + result;
+    if (endIndex != elements.size() || trailing)
+      result = result + "/";
+    return S3Path.getPath(fileSystem, result).toString();
+  }
+
+  /**
+   * The key as computed before keys were memoized: the real path without the leading separator,
+   * and without a leading bucket name
+   */
+  private String expectedKey(S3Path path) {
+    if (path.toString().isEmpty())
+      return "";
+    String s = path.toRealPath().toString();
+    if (s.startsWith("/" + fileSystem.getBucketName()))
+      s = s.substring(fileSystem.getBucketName().length() + 1);
+    while (s.startsWith("/"))
+      s = s.substring(1);
+    return s;
+  }
+}
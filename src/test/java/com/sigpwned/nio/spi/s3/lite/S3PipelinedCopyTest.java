@@ -0,0 +1,64 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.io.IOException;
+import org.junit.Test;
+import com.sigpwned.nio.spi.s3.lite.util.BufferPool;
+
+public class S3PipelinedCopyTest {
+  /**
+   * A small forced part size, so that objects outgrow it without being huge
+   */
+  private static final int PART_SIZE = 1000;
+
+  @Test
+  public void defaultPartSizeTest() {
+    assertThat(S3PipelinedCopy.partSizeFor(PART_SIZE, PART_SIZE), is(PART_SIZE));
+    assertThat(S3PipelinedCopy.partSizeFor(10000L * PART_SIZE, PART_SIZE), is(PART_SIZE));
+  }
+
+  @Test
+  public void grownPartSizeTest() {
+    // Too many parts at the default size, so each part grows
+    assertThat(S3PipelinedCopy.partSizeFor(10000L * PART_SIZE + 1L, PART_SIZE),
+        is(PART_SIZE + 1));
+    assertThat(S3PipelinedCopy.partSizeFor(30000L * PART_SIZE, PART_SIZE), is(3 * PART_SIZE));
+  }
+
+  @Test
+  public void grownPartBufferNotKeptTest() throws IOException {
+    final BufferPool buffers = new BufferPool(4, PART_SIZE);
+    final int partSize = S3PipelinedCopy.partSizeFor(30000L * PART_SIZE, PART_SIZE);
+
+    final byte[] buffer = buffers.acquire(partSize);
+    buffers.release(buffer);
+
+    // The pool only keeps buffers of the default part size
+    assertThat(buffers.acquire(PART_SIZE).length, is(PART_SIZE));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tooLargeTest() {
+    S3PipelinedCopy.partSizeFor(10000L * Integer.MAX_VALUE + 10000L, PART_SIZE);
+  }
+}
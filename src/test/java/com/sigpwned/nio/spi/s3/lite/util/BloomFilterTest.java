@@ -0,0 +1,113 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class BloomFilterTest {
+  @Test
+  public void noFalseNegativesTest() {
+    final BloomFilter filter = new BloomFilter(10000L, 0.01);
+    for (int i = 0; i < 10000; i++)
+      filter.add(BloomFilter.hash("data/" + i + ".txt"));
+
+    for (int i = 0; i < 10000; i++)
+      assertThat(filter.mightContain(BloomFilter.hash("data/" + i + ".txt")), is(true));
+  }
+
+  @Test
+  public void falsePositiveRateTest() {
+    final BloomFilter filter = new BloomFilter(10000L, 0.01);
+    for (int i = 0; i < 10000; i++)
+      filter.add(BloomFilter.hash("data/" + i + ".txt"));
+
+    int falsePositives = 0;
+    for (int i = 10000; i < 110000; i++)
+      if (filter.mightContain(BloomFilter.hash("data/" + i + ".txt")))
+        falsePositives = falsePositives + 1;
+
+    // Expect about 1000, and leave room for an unlucky hash
+    assertThat(falsePositives, lessThan(2000));
+  }
+
+  @Test
+  public void emptyTest() {
+    final BloomFilter filter = new BloomFilter(0L, 0.01);
+
+    assertThat(filter.mightContain(BloomFilter.hash("")), is(false));
+    assertThat(filter.mightContain(BloomFilter.hash("a")), is(false));
+
+    filter.add(BloomFilter.hash("a"));
+
+    assertThat(filter.mightContain(BloomFilter.hash("a")), is(true));
+  }
+
+  @Test
+  public void concurrentAddTest() throws InterruptedException {
+    final BloomFilter filter = new BloomFilter(40000L, 0.01);
+
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 10000; i++)
+          filter.add(BloomFilter.hash(thread + "/" + i));
+      }));
+    }
+    for (Thread thread : threads)
+      thread.start();
+    for (Thread thread : threads)
+      thread.join();
+
+    // Concurrent updates to the same word must not lose bits
+    for (int t = 0; t < 4; t++)
+      for (int i = 0; i < 10000; i++)
+        assertThat(filter.mightContain(BloomFilter.hash(t + "/" + i)), is(true));
+  }
+
+  @Test
+  public void hashTest() {
+    final Set<Long> hashes = new HashSet<>();
+    for (String s : new String[] {"", "a", "b", "ab", "ba", "a/", "/a", "\u00E9", "e\u0301",
+        "\uD83D\uDE00", "\uD83D\uDE01"})
+      hashes.add(BloomFilter.hash(s));
+
+    assertThat(hashes.size(), is(11));
+    assertThat(BloomFilter.hash(new StringBuilder("data/1.txt")),
+        is(BloomFilter.hash("data/1.txt")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeExpectedInsertionsTest() {
+    new BloomFilter(-1L, 0.01);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void falsePositiveRateOutOfRangeTest() {
+    new BloomFilter(100L, 1.0);
+  }
+}
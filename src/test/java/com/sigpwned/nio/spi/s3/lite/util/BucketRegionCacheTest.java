@@ -0,0 +1,134 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BucketRegionCacheTest {
+  public Path directory;
+
+  public Path file;
+
+  @Before
+  public void setupBucketRegionCacheTest() throws IOException {
+    directory = Files.createTempDirectory("regions");
+    file = directory.resolve("regions.properties");
+  }
+
+  @After
+  public void cleanupBucketRegionCacheTest() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path f : (Iterable<Path>) files::iterator)
+        Files.delete(f);
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  public void memoryTest() {
+    final BucketRegionCache cache = new BucketRegionCache();
+    assertThat(cache.get("alpha"), is(nullValue()));
+
+    cache.put("alpha", "us-east-1");
+    assertThat(cache.get("alpha"), is("us-east-1"));
+  }
+
+  @Test
+  public void reloadTest() throws IOException {
+    final BucketRegionCache cache = new BucketRegionCache(file);
+    cache.put("alpha", "us-east-1");
+    cache.put("bravo", "eu-west-1");
+
+    final BucketRegionCache reloaded = new BucketRegionCache(file);
+    assertThat(reloaded.get("alpha"), is("us-east-1"));
+    assertThat(reloaded.get("bravo"), is("eu-west-1"));
+  }
+
+  @Test
+  public void mergeTest() throws IOException {
+    // Two processes sharing one file
+    final BucketRegionCache first = new BucketRegionCache(file);
+    final BucketRegionCache second = new BucketRegionCache(file);
+
+    first.put("alpha", "us-east-1");
+    second.put("bravo", "eu-west-1");
+
+    final BucketRegionCache reloaded = new BucketRegionCache(file);
+    assertThat(reloaded.get("alpha"), is("us-east-1"));
+    assertThat(reloaded.get("bravo"), is("eu-west-1"));
+  }
+
+  @Test
+  public void invalidateTest() throws IOException {
+    final BucketRegionCache cache = new BucketRegionCache(file);
+    cache.put("alpha", "us-east-1");
+    cache.put("bravo", "eu-west-1");
+
+    assertThat(cache.invalidate("alpha", "us-east-1"), is(true));
+    assertThat(cache.get("alpha"), is(nullValue()));
+
+    final BucketRegionCache reloaded = new BucketRegionCache(file);
+    assertThat(reloaded.get("alpha"), is(nullValue()));
+    assertThat(reloaded.get("bravo"), is("eu-west-1"));
+  }
+
+  @Test
+  public void invalidateNewerRegionTest() throws IOException {
+    final BucketRegionCache cache = new BucketRegionCache(file);
+    cache.put("alpha", "us-east-1");
+
+    // Another caller already learned the new region, so the stale one is already gone
+    cache.put("alpha", "us-west-2");
+    assertThat(cache.invalidate("alpha", "us-east-1"), is(false));
+    assertThat(cache.get("alpha"), is("us-west-2"));
+
+    assertThat(new BucketRegionCache(file).get("alpha"), is("us-west-2"));
+  }
+
+  @Test
+  public void confirmTest() throws IOException {
+    final BucketRegionCache saved = new BucketRegionCache(file);
+    saved.put("alpha", "us-east-1");
+    assertThat(saved.isConfirmed("alpha"), is(true));
+
+    // Entries loaded from the file need checking
+    final BucketRegionCache cache = new BucketRegionCache(file);
+    assertThat(cache.get("alpha"), is("us-east-1"));
+    assertThat(cache.isConfirmed("alpha"), is(false));
+
+    cache.confirm("alpha", "eu-west-1");
+    assertThat(cache.isConfirmed("alpha"), is(false));
+
+    cache.confirm("alpha", "us-east-1");
+    assertThat(cache.isConfirmed("alpha"), is(true));
+
+    cache.invalidate("alpha", "us-east-1");
+    assertThat(cache.isConfirmed("alpha"), is(false));
+  }
+}
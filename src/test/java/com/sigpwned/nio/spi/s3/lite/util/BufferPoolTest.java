@@ -0,0 +1,81 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import java.io.IOException;
+import org.junit.Test;
+
+public class BufferPoolTest {
+  @Test
+  public void reuseTest() throws IOException {
+    final BufferPool pool = new BufferPool(2, 1000);
+
+    final byte[] buffer = pool.acquire(1000);
+    assertThat(buffer.length, is(1000));
+    pool.release(buffer);
+
+    assertThat(pool.acquire(500), sameInstance(buffer));
+  }
+
+  @Test
+  public void oversizedBufferTest() throws IOException {
+    final BufferPool pool = new BufferPool(2, 1000);
+
+    // Larger than the buffer size, so it is allocated for this caller and dropped afterwards
+    final byte[] buffer = pool.acquire(5000);
+    assertThat(buffer.length, is(5000));
+    pool.release(buffer);
+
+    final byte[] next = pool.acquire(1000);
+    assertThat(next, not(sameInstance(buffer)));
+    assertThat(next.length, is(1000));
+  }
+
+  @Test
+  public void capacityTest() throws IOException {
+    final BufferPool pool = new BufferPool(2, 1000);
+    final byte[] first = pool.acquire(1000);
+    final byte[] second = pool.acquire(1000);
+
+    new Thread(() -> {
+      try {
+        Thread.sleep(200L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      pool.release(first);
+    }).start();
+
+    // Waits until the other thread returns a buffer
+    assertThat(pool.acquire(1000), sameInstance(first));
+
+    pool.release(first);
+    pool.release(second);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void zeroCapacityTest() {
+    new BufferPool(0, 1000);
+  }
+}
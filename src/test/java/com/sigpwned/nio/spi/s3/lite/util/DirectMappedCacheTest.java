@@ -0,0 +1,94 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import org.junit.Test;
+
+public class DirectMappedCacheTest {
+  @Test
+  public void getPutTest() {
+    final DirectMappedCache<String, String> cache = new DirectMappedCache<>(16);
+    assertThat(cache.get("alpha"), is(nullValue()));
+
+    cache.put("alpha", "a");
+    cache.put("bravo", "b");
+    assertThat(cache.get("alpha"), is("a"));
+    assertThat(cache.get("bravo"), is("b"));
+
+    cache.put("alpha", "aa");
+    assertThat(cache.get("alpha"), is("aa"));
+  }
+
+  @Test
+  public void collisionTest() {
+    // "Aa" and "BB" have the same hash code, so they share a slot
+    final DirectMappedCache<String, String> cache = new DirectMappedCache<>(16);
+    cache.put("Aa", "first");
+    cache.put("BB", "second");
+
+    assertThat(cache.get("Aa"), is(nullValue()));
+    assertThat(cache.get("BB"), is("second"));
+  }
+
+  @Test
+  public void roundingTest() {
+    // Small Integers hash to themselves, so key i lives in slot i modulo the slot count. Three
+    // slots round up to four, so 4 replaces 0.
+    final DirectMappedCache<Integer, String> four = new DirectMappedCache<>(3);
+    for (int i = 0; i <= 4; i++)
+      four.put(i, "v" + i);
+    assertThat(four.get(0), is(nullValue()));
+    for (int i = 1; i <= 4; i++)
+      assertThat(four.get(i), is("v" + i));
+
+    // Five slots round up to eight, so all fit
+    final DirectMappedCache<Integer, String> eight = new DirectMappedCache<>(5);
+    for (int i = 0; i <= 7; i++)
+      eight.put(i, "v" + i);
+    for (int i = 0; i <= 7; i++)
+      assertThat(eight.get(i), is("v" + i));
+  }
+
+  @Test
+  public void invalidateAllTest() {
+    final DirectMappedCache<String, String> cache = new DirectMappedCache<>(16);
+    cache.put("alpha", "a");
+    cache.invalidateAll();
+    assertThat(cache.get("alpha"), is(nullValue()));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void nullKeyTest() {
+    new DirectMappedCache<String, String>(16).put(null, "a");
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void nullValueTest() {
+    new DirectMappedCache<String, String>(16).put("alpha", null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void zeroSlotsTest() {
+    new DirectMappedCache<String, String>(0);
+  }
+}
@@ -0,0 +1,172 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+public class FrontCodedStringListTest {
+  /**
+   * Orders strings by their UTF-8 bytes, like the list does
+   */
+  private static final Comparator<String> UTF8_ORDER = (a, b) -> {
+    byte[] ab = a.getBytes(UTF_8);
+    byte[] bb = b.getBytes(UTF_8);
+    for (int i = 0; i < Math.min(ab.length, bb.length); i++)
+      if (ab[i] != bb[i])
+        return (ab[i] & 0xFF) - (bb[i] & 0xFF);
+    return ab.length - bb.length;
+  };
+
+  @Test
+  public void emptyTest() {
+    final FrontCodedStringList list = new FrontCodedStringList.Builder().build();
+
+    assertThat(list.size(), is(0));
+    assertThat(list.lowerBound(""), is(0));
+    assertThat(list.lowerBound("a"), is(0));
+    assertThat(list.iterator(0, 0).hasNext(), is(false));
+  }
+
+  @Test
+  public void blockBoundaryTest() {
+    // Sizes around one and two blocks, so the last block is full, partial, or a single string
+    final int b = FrontCodedStringList.BLOCK_SIZE;
+    for (int size : new int[] {1, b - 1, b, b + 1, 2 * b - 1, 2 * b, 2 * b + 1, 5 * b + 3}) {
+      final List<String> strings = new ArrayList<>();
+      for (int i = 0; i < size; i++)
+        strings.add(String.format("data/%04d.txt", 2 * i + 1));
+      final FrontCodedStringList list = build(strings);
+
+      assertThat(list.size(), is(size));
+      for (int i = 0; i < size; i++) {
+        assertThat(list.get(i), is(strings.get(i)));
+        assertThat(list.lowerBound(strings.get(i)), is(i));
+
+        // Between this string and the one before it
+        assertThat(list.lowerBound(String.format("data/%04d.txt", 2 * i)), is(i));
+      }
+      assertThat(list.lowerBound(""), is(0));
+      assertThat(list.lowerBound("data/"), is(0));
+      assertThat(list.lowerBound(String.format("data/%04d.txt", 2 * size)), is(size));
+      assertThat(list.lowerBound("data0"), is(size));
+      assertThat(toList(list.iterator(0, size)), is(strings));
+    }
+  }
+
+  @Test
+  public void iteratorTest() {
+    final List<String> strings = new ArrayList<>();
+    for (int i = 0; i < 50; i++)
+      strings.add("data/" + i);
+    strings.sort(UTF8_ORDER);
+    final FrontCodedStringList list = build(strings);
+
+    for (int from = 0; from <= strings.size(); from++)
+      for (int to = from; to <= strings.size(); to++)
+        assertThat(toList(list.iterator(from, to)), is(strings.subList(from, to)));
+  }
+
+  @Test
+  public void multiByteOrderTest() {
+    // U+FF01 sorts before U+1F600 in UTF-8, but after its surrogates in UTF-16
+    final List<String> strings = Arrays.asList("a", "a\u00E9", "a\u00E9\u00E9", "a\u0800",
+        "a\uFF01", "a\uD83D\uDE00", "a\uD83D\uDE00b", "a\uD83D\uDE01", "b");
+    final FrontCodedStringList list = build(strings);
+
+    assertThat(toList(list.iterator(0, list.size())), is(strings));
+    for (int i = 0; i < strings.size(); i++) {
+      assertThat(list.get(i), is(strings.get(i)));
+      assertThat(list.lowerBound(strings.get(i)), is(i));
+    }
+    assertThat(list.lowerBound("a\uFFFF"), is(5));
+    assertThat(list.lowerBound("a\uFF01\u0000"), is(5));
+  }
+
+  @Test
+  public void randomTest() {
+    final Random random = new Random(0L);
+    final String alphabet = "ab/\u00E9\uFF01\uD83D\uDE00";
+    final TreeSet<String> strings = new TreeSet<>(UTF8_ORDER);
+    while (strings.size() < 1000) {
+      final StringBuilder s = new StringBuilder("prefix/");
+      final int length = random.nextInt(8);
+      for (int i = 0; i < length; i++) {
+        int c = random.nextInt(alphabet.length() - 1);
+        s.append(alphabet.charAt(c));
+        if (Character.isHighSurrogate(alphabet.charAt(c)))
+          s.append(alphabet.charAt(c + 1));
+      }
+      strings.add(s.toString());
+    }
+    final List<String> sorted = new ArrayList<>(strings);
+    final FrontCodedStringList list = build(sorted);
+
+    assertThat(toList(list.iterator(0, list.size())), is(sorted));
+    for (int i = 0; i < 1000; i++) {
+      final String probe = sorted.get(random.nextInt(sorted.size())) + (i % 2 == 0 ? "" : "a");
+      assertThat(list.lowerBound(probe), is(sorted.size() - strings.tailSet(probe).size()));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void outOfOrderTest() {
+    new FrontCodedStringList.Builder().add("b").add("a");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void duplicateTest() {
+    new FrontCodedStringList.Builder().add("a").add("a");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void utf16OrderTest() {
+    // In UTF-16 order, but not in UTF-8 order
+    new FrontCodedStringList.Builder().add("\uD83D\uDE00").add("\uFF01");
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void getOutOfBoundsTest() {
+    build(Arrays.asList("a", "b")).get(2);
+  }
+
+  private static FrontCodedStringList build(List<String> strings) {
+    final FrontCodedStringList.Builder builder = new FrontCodedStringList.Builder();
+    for (String s : strings)
+      builder.add(s);
+    return builder.build();
+  }
+
+  private static List<String> toList(Iterator<String> iterator) {
+    final List<String> result = new ArrayList<>();
+    while (iterator.hasNext())
+      result.add(iterator.next());
+    return result;
+  }
+}
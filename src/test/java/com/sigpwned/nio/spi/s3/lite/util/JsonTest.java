@@ -0,0 +1,100 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class JsonTest {
+  @Test
+  public void literalTest() {
+    assertThat(Json.parse("true"), is((Object) Boolean.TRUE));
+    assertThat(Json.parse("false"), is((Object) Boolean.FALSE));
+    assertThat(Json.parse(" null "), is(nullValue()));
+    assertThat(Json.parse("\"\""), is((Object) ""));
+  }
+
+  @Test
+  public void escapeTest() {
+    assertThat(Json.parse("\"a\\\"b\\\\c\\/d\""), is((Object) "a\"b\\c/d"));
+    assertThat(Json.parse("\"\\b\\f\\n\\r\\t\""), is((Object) "\b\f\n\r\t"));
+    assertThat(Json.parse("\"\\u0041\\u00e9\\u00E9\""), is((Object) "A\u00E9\u00E9"));
+    assertThat(Json.parse("\"\\uD83D\\uDE00\""), is((Object) "\uD83D\uDE00"));
+    assertThat(Json.parse("\"\uD83D\uDE00\""), is((Object) "\uD83D\uDE00"));
+  }
+
+  @Test
+  public void numberTest() {
+    assertThat(Json.parse("0"), is((Object) 0.0));
+    assertThat(Json.parse("-1"), is((Object) (-1.0)));
+    assertThat(Json.parse("1.5"), is((Object) 1.5));
+    assertThat(Json.parse("1.5e3"), is((Object) 1500.0));
+    assertThat(Json.parse("2E-2"), is((Object) 0.02));
+    assertThat(Json.parse("12345678901"), is((Object) 12345678901.0));
+  }
+
+  @Test
+  public void nestingTest() {
+    final Map<String, Object> file = new LinkedHashMap<>();
+    file.put("key", "data/1.csv.gz");
+    file.put("size", 10.0);
+    final Map<String, Object> expected = new LinkedHashMap<>();
+    expected.put("sourceBucket", "example");
+    expected.put("files", asList(file, emptyMap(), emptyList()));
+    expected.put("nested", asList(asList(asList(true, null))));
+
+    final Object parsed = Json.parse("{ \"sourceBucket\" : \"example\",\n"
+        + "  \"files\": [ {\"key\":\"data/1.csv.gz\", \"size\": 10}, {}, [] ],\n"
+        + "  \"nested\": [[[true,null]]] }");
+
+    assertThat(parsed, is((Object) expected));
+    assertThat(((Map<?, ?>) parsed).keySet(), is(expected.keySet()));
+  }
+
+  @Test
+  public void duplicateNameTest() {
+    assertThat(((Map<?, ?>) Json.parse("{\"a\":1,\"a\":2}")).get("a"), is((Object) 2.0));
+  }
+
+  @Test
+  public void malformedTest() {
+    final List<String> documents = asList("", " ", "x", "tru", "nul", "-", "1e", "1 2", "\"abc",
+        "\"\\", "\"\\x\"", "\"\\u12\"", "\"\\u12g4\"", "\"\\u+123\"", "[", "[1", "[1,]", "[,1]",
+        "[1 2]", "{", "{\"a\"}", "{\"a\" 1}", "{\"a\":}", "{\"a\":1,}", "{a:1}", "{\"a\":1]",
+        "[1}", "{} {}");
+    for (String document : documents) {
+      try {
+        Json.parse(document);
+        fail("parsed malformed document: " + document);
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+}
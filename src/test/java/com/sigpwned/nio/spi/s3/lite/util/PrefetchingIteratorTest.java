@@ -0,0 +1,167 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+public class PrefetchingIteratorTest {
+  /**
+   * Runs each task on a new thread, and remembers the thread and when the task finished
+   */
+  private static class TrackingExecutor implements Executor {
+    final AtomicReference<Thread> thread = new AtomicReference<>();
+    final CountDownLatch finished = new CountDownLatch(1);
+
+    @Override
+    public void execute(Runnable task) {
+      Thread t = new Thread(() -> {
+        try {
+          task.run();
+        } finally {
+          finished.countDown();
+        }
+      });
+      thread.set(t);
+      t.start();
+    }
+  }
+
+  /**
+   * Counts up from zero forever
+   */
+  private static class CountingIterator implements Iterator<Integer> {
+    final AtomicInteger count = new AtomicInteger(0);
+
+    @Override
+    public boolean hasNext() {
+      return true;
+    }
+
+    @Override
+    public Integer next() {
+      return count.getAndIncrement();
+    }
+  }
+
+  @Test
+  public void prefetchTest() throws IOException {
+    final List<Integer> expected = new ArrayList<>();
+    IntStream.range(0, 100).forEach(expected::add);
+
+    final List<Integer> observed = new ArrayList<>();
+    try (PrefetchingIterator<Integer> iterator =
+        new PrefetchingIterator<>(expected.iterator(), 2, new TrackingExecutor())) {
+      while (iterator.hasNext())
+        observed.add(iterator.next());
+    }
+
+    assertThat(observed, is(expected));
+  }
+
+  @Test
+  public void closeTest() throws IOException, InterruptedException {
+    final CountingIterator delegate = new CountingIterator();
+    final TrackingExecutor executor = new TrackingExecutor();
+
+    final PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(delegate, 2, executor);
+    assertThat(iterator.next(), is(0));
+    iterator.close();
+
+    assertThat(executor.finished.await(5L, TimeUnit.SECONDS), is(true));
+    assertThat(iterator.hasNext(), is(false));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void failureTest() throws IOException {
+    final Iterator<Integer> delegate = new Iterator<Integer>() {
+      private int count = 0;
+
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Integer next() {
+        if (count == 3)
+          throw new IllegalStateException();
+        return count++;
+      }
+    };
+
+    try (PrefetchingIterator<Integer> iterator =
+        new PrefetchingIterator<>(delegate, 2, new TrackingExecutor())) {
+      // The elements before the failure come through in order
+      for (int i = 0; i < 3; i++)
+        assertThat(iterator.next(), is(i));
+      iterator.hasNext();
+    }
+  }
+
+  @Test
+  public void idleTimeoutTest() throws IOException, InterruptedException {
+    final List<Integer> expected = new ArrayList<>();
+    IntStream.range(0, 10).forEach(expected::add);
+
+    final TrackingExecutor executor = new TrackingExecutor();
+
+    final List<Integer> observed = new ArrayList<>();
+    try (PrefetchingIterator<Integer> iterator = new PrefetchingIterator<>(expected.iterator(), 1,
+        executor, Duration.ofMillis(200L))) {
+      // Nobody is consuming, so the background thread gives up
+      assertThat(executor.finished.await(5L, TimeUnit.SECONDS), is(true));
+
+      // ...but a consumer that comes back still gets every element
+      while (iterator.hasNext())
+        observed.add(iterator.next());
+    }
+
+    assertThat(observed, is(expected));
+  }
+
+  @Test(expected = UncheckedIOException.class)
+  public void interruptTest() throws IOException, InterruptedException {
+    final TrackingExecutor executor = new TrackingExecutor();
+
+    try (PrefetchingIterator<Integer> iterator =
+        new PrefetchingIterator<>(new CountingIterator(), 1, executor)) {
+      executor.thread.get().interrupt();
+      assertThat(executor.finished.await(5L, TimeUnit.SECONDS), is(true));
+
+      // The listing is incomplete, so the consumer must not just see the end
+      while (iterator.hasNext())
+        iterator.next();
+    }
+  }
+}
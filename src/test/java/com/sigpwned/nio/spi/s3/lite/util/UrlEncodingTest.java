@@ -0,0 +1,106 @@
+/*-
+ * =================================LICENSE_START==================================
+ * AWS Java NIO SPI for S3 Lite
+ * ====================================SECTION=====================================
+ * Copyright (C) 2023 Andy Boothe
+ * ====================================SECTION=====================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ==================================LICENSE_END===================================
+ */
+package com.sigpwned.nio.spi.s3.lite.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class UrlEncodingTest {
+  private static final List<String> STRINGS = asList("", "a", "a/b/", "a b", "a+b", "a%20b",
+      "100%", "~user", "a*b", "a-b_c.d", "a?b#c", "a;b=c&d", "[x]:@!$'(),", "\"<>\\^`{|}",
+      "\t\n\r\u007F", "\u00E9", "e\u0301", "\u65E5\u672C", "\uFF01", "\uD83D\uDE00",
+      "a/\uD83D\uDE00 b/c+d", "\uD83D", "\uDE00", "a\uDE00\uD83Db");
+
+  @Test
+  public void urlencodePathTest() {
+    final List<String> strings = new ArrayList<>(STRINGS);
+    for (char c = 0; c < 128; c++)
+      strings.add("x" + c + "y");
+    strings.addAll(randomStrings());
+
+    for (String s : strings)
+      assertThat(s, UrlEncoding.urlencodePath(s), is(expectedUrlencodePath(s)));
+  }
+
+  @Test
+  public void encodeUriPathTest() {
+    assertThat(UrlEncoding.encodeUriPath("a/b c/d+e"), is("a/b%20c/d+e"));
+    assertThat(UrlEncoding.encodeUriPath("100%"), is("100%25"));
+    assertThat(UrlEncoding.encodeUriPath("a?b#c"), is("a%3Fb%23c"));
+    assertThat(UrlEncoding.encodeUriPath("~-._!$&'()*,;=:@"), is("~-._!$&'()*,;=:@"));
+    assertThat(UrlEncoding.encodeUriPath("\u00E9"), is("%C3%A9"));
+    assertThat(UrlEncoding.encodeUriPath("\uFF01"), is("%EF%BC%81"));
+    assertThat(UrlEncoding.encodeUriPath("\uD83D\uDE00"), is("%F0%9F%98%80"));
+    assertThat(UrlEncoding.encodeUriPath("\uD83D"), is("%3F"));
+  }
+
+  @Test
+  public void encodeUriPathRoundTripTest() {
+    final List<String> strings = new ArrayList<>(STRINGS);
+    for (char c = 0; c < 128; c++)
+      strings.add("x" + c + "y");
+    strings.addAll(randomStrings());
+
+    for (String s : strings) {
+      // Unpaired surrogates cannot survive any UTF-8 encoding
+      if (!s.equals(new String(s.getBytes(UTF_8), UTF_8)))
+        continue;
+      final URI uri = URI.create("s3://example/" + UrlEncoding.encodeUriPath(s));
+      assertThat(s, uri.getPath(), is("/" + s));
+    }
+  }
+
+  @Test
+  public void appendEncodedUriPathTest() {
+    for (String s : STRINGS) {
+      final StringBuilder out = new StringBuilder("prefix:");
+      UrlEncoding.appendEncodedUriPath(out, "<" + s + ">", 1, s.length() + 1);
+      assertThat(s, out.toString(), is("prefix:" + UrlEncoding.encodeUriPath(s)));
+    }
+  }
+
+  /**
+   * The encoding as computed before the encoder was table-driven
+   */
+  private static String expectedUrlencodePath(String s) {
+    return UrlEncoding.urlencode(s).replace("+", "%20").replace("%2F", "/");
+  }
+
+  private static List<String> randomStrings() {
+    final Random random = new Random(0L);
+    final String alphabet = "ab /+%~*.\u00E9\u65E5\uD83D\uDE00";
+    final List<String> result = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      final StringBuilder s = new StringBuilder();
+      final int length = random.nextInt(10);
+      for (int j = 0; j < length; j++)
+        s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+      result.add(s.toString());
+    }
+    return result;
+  }
+}